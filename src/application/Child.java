@@ -1,76 +1,325 @@
 package application;
 
-import java.util.ArrayList;
+import application.Functionality.DailyAggregates;
+import application.Functionality.RecordColumns;
+import application.Functionality.RecordDictionary;
+import application.Functionality.RecordFormat;
+import application.Functionality.RecordJournal;
+import application.Functionality.RecordSegments;
+
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 
 public class Child {
     private String name;
-    private ArrayList<SleepSession> sleepRecords;
-    private ArrayList<FeedingRecord> feedingRecords;
-    private ArrayList<MedicationRecord> medicationRecords;
-    private ArrayList<DiaperChangeRecord> diaperChangeRecords;  // New list for diaper change records
-    private ArrayList<GrowthData> growthRecords;  // New list for growth records
+    // The records are kept as columns of plain numbers rather than lists of objects, which takes a fraction of the memory.
+    // They are still lists of records as far as everything else is concerned (see RecordColumns).
+    private RecordColumns<SleepSession> sleepRecords;
+    private RecordColumns<FeedingRecord> feedingRecords;
+    private RecordColumns<MedicationRecord> medicationRecords;
+    private RecordColumns<DiaperChangeRecord> diaperChangeRecords;  // New list for diaper change records
+    private RecordColumns<GrowthData> growthRecords;  // New list for growth records
+    // The journal that changes are noted in, so they can be saved without rewriting every record file.
+    // This is set by ChildDatabase once loading is done, and is null for children not in a database.
+    private RecordJournal journal;
+    // The record types (see RecordFormat) which have changed since their record files were last written.
+    // ChildDatabase uses this so it only rewrites the record files that actually need it.
+    private HashSet<String> dirtyTypes;
+    // For dirty types where only some segments (see RecordSegments) have changed, which ones they are.
+    // A dirty type with no entry here needs every segment rewriting, e.g. when it is being migrated.
+    private HashMap<String, HashSet<String>> dirtySegments;
+    // Loads the records from the disk the first time they are needed, so opening an account only reads names.
+    // This is set by ChildDatabase, and becomes null once the records are loaded.
+    private Runnable loader;
 
     public Child(String name) {
+        this(name, new RecordDictionary());
+    }
+    // Constructor for a child whose records share a dictionary of strings with others, e.g. the rest of its database.
+    public Child(String name, RecordDictionary dictionary) {
         this.name = name;
-        this.sleepRecords = new ArrayList<>();
-        this.feedingRecords = new ArrayList<>();
-        this.medicationRecords = new ArrayList<>();
-        this.diaperChangeRecords = new ArrayList<>();
-        this.growthRecords = new ArrayList<>();
+        this.sleepRecords = new RecordColumns<>(RecordColumns.SLEEP, dictionary);
+        this.feedingRecords = new RecordColumns<>(RecordColumns.FEEDING, dictionary);
+        this.medicationRecords = new RecordColumns<>(RecordColumns.MEDICATION, dictionary);
+        this.diaperChangeRecords = new RecordColumns<>(RecordColumns.DIAPERCHANGE, dictionary);
+        this.growthRecords = new RecordColumns<>(RecordColumns.GROWTH, dictionary);
+        this.dirtyTypes = new HashSet<>();
+        this.dirtySegments = new HashMap<>();
     }
 
     // Getter methods
+    // The lists of records are in the order they were added, which table rows rely on (see ChildProfile).
+    // They can't be changed, so records must be added and deleted with the methods below, which note the changes.
     public String getName() {
         return name;
     }
-    public ArrayList<FeedingRecord> getFeedingRecords() {
-        return feedingRecords;
+    public List<FeedingRecord> getFeedingRecords() {
+        load();
+        return feedingRecords.readOnly();
+    }
+    public List<SleepSession> getSleepRecords() {
+        load();
+        return sleepRecords.readOnly();
+    }
+    public List<MedicationRecord> getMedicationRecords() {
+        load();
+        return medicationRecords.readOnly();
+    }
+    public List<DiaperChangeRecord> getDiaperChangeRecords() {  // Getter for diaper change records
+        load();
+        return diaperChangeRecords.readOnly();
+    }
+    public List<GrowthData> getGrowthRecords() {  // Getter for growth records
+        load();
+        return growthRecords.readOnly();
+    }
+    // Methods to get the records from (inclusive) up to (exclusive) the given times, oldest first.
+    // Either time can be null for no limit, so passing two nulls gets every record in order of time.
+    // These only take a binary search however many records there are (see RecordColumns), and the lists
+    // can't be changed, and stop working once the records are changed.
+    public List<FeedingRecord> getFeedingRecords(LocalDateTime from, LocalDateTime to) {
+        load();
+        return feedingRecords.between(from, to);
+    }
+    public List<SleepSession> getSleepRecords(LocalDateTime from, LocalDateTime to) {
+        load();
+        return sleepRecords.between(from, to);
+    }
+    public List<MedicationRecord> getMedicationRecords(LocalDateTime from, LocalDateTime to) {
+        load();
+        return medicationRecords.between(from, to);
+    }
+    public List<DiaperChangeRecord> getDiaperChangeRecords(LocalDateTime from, LocalDateTime to) {
+        load();
+        return diaperChangeRecords.between(from, to);
+    }
+    public List<GrowthData> getGrowthRecords(LocalDateTime from, LocalDateTime to) {
+        load();
+        return growthRecords.between(from, to);
+    }
+    // Methods to get the latest records by time, up to the given number of them, oldest first.
+    public List<FeedingRecord> getLastFeedingRecords(int count) {
+        load();
+        return feedingRecords.last(count);
+    }
+    public List<SleepSession> getLastSleepRecords(int count) {
+        load();
+        return sleepRecords.last(count);
+    }
+    public List<MedicationRecord> getLastMedicationRecords(int count) {
+        load();
+        return medicationRecords.last(count);
+    }
+    public List<DiaperChangeRecord> getLastDiaperChangeRecords(int count) {
+        load();
+        return diaperChangeRecords.last(count);
     }
-    public ArrayList<SleepSession> getSleepRecords() {
-        return sleepRecords;
+    public List<GrowthData> getLastGrowthRecords(int count) {
+        load();
+        return growthRecords.last(count);
     }
-    public ArrayList<MedicationRecord> getMedicationRecords() {
-        return medicationRecords;
+    // Methods to get the running totals for each day, e.g. how much was fed today (see DailyAggregates).
+    // These are worked out the first time they are needed, then kept up to date as records are added or deleted.
+    public DailyAggregates getFeedingAggregates() {
+        load();
+        return feedingRecords.getDailyAggregates();
     }
-    public ArrayList<DiaperChangeRecord> getDiaperChangeRecords() {  // Getter for diaper change records
-        return diaperChangeRecords;
+    public DailyAggregates getSleepAggregates() {
+        load();
+        return sleepRecords.getDailyAggregates();
     }
-    public ArrayList<GrowthData> getGrowthRecords() {  // Getter for growth records
-        return growthRecords;
+    public DailyAggregates getMedicationAggregates() {
+        load();
+        return medicationRecords.getDailyAggregates();
+    }
+    public DailyAggregates getDiaperChangeAggregates() {
+        load();
+        return diaperChangeRecords.getDailyAggregates();
+    }
+    public DailyAggregates getGrowthAggregates() {
+        load();
+        return growthRecords.getDailyAggregates();
+    }
+    // Method to get the version of the records of a type (see RecordFormat), which changes whenever they do.
+    // Reports use this to tell whether one made earlier is still up to date (see ReportCache).
+    public long getRecordVersion(String type) {
+        load();
+        switch (type) {
+            case RecordFormat.DIAPERCHANGE:
+                return diaperChangeRecords.getVersion();
+            case RecordFormat.FEEDING:
+                return feedingRecords.getVersion();
+            case RecordFormat.GROWTH:
+                return growthRecords.getVersion();
+            case RecordFormat.MEDICATION:
+                return medicationRecords.getVersion();
+            default:
+                return sleepRecords.getVersion();
+        }
+    }
+    // Method to get the records of a type (see RecordFormat) as the columns they are kept in, which can be changed.
+    // Only for ChildDatabase, when loading and saving, since changes made to these aren't noted in any journal.
+    public RecordColumns<?> getRecordColumns(String type) {
+        load();
+        switch (type) {
+            case RecordFormat.DIAPERCHANGE:
+                return diaperChangeRecords;
+            case RecordFormat.FEEDING:
+                return feedingRecords;
+            case RecordFormat.GROWTH:
+                return growthRecords;
+            case RecordFormat.MEDICATION:
+                return medicationRecords;
+            default:
+                return sleepRecords;
+        }
+    }
+    // Set the method that loads the records, which will be run the first time they are needed.
+    public synchronized void setLoader(Runnable loader) {
+        this.loader = loader;
+    }
+    // Check whether the records have been loaded yet.
+    public synchronized boolean isLoaded() {
+        return loader == null;
+    }
+    // Load the records now, if they haven't been already.
+    // The loader is cleared before it runs, since it fills in the records using the getters above.
+    public synchronized void load() {
+        if (loader != null) {
+            Runnable running = loader;
+            loader = null;
+            running.run();
+        }
+    }
+    // Add all of this child's records on to the end of another child's, without noting them in any journal.
+    // Used by ChildDatabase when loading, to move records read from the disk into the real child.
+    public void copyRecordsTo(Child other) {
+        load();
+        other.load();
+        other.sleepRecords.addAll(sleepRecords);
+        other.feedingRecords.addAll(feedingRecords);
+        other.medicationRecords.addAll(medicationRecords);
+        other.diaperChangeRecords.addAll(diaperChangeRecords);
+        other.growthRecords.addAll(growthRecords);
+    }
+    // Set the journal that record changes should be noted in from now on.
+    public void setJournal(RecordJournal journal) {
+        this.journal = journal;
+    }
+    // Methods to track which record types have changed since their record files were last written.
+    // These are synchronized, since the database writes the files on a background thread.
+    public synchronized boolean isDirty(String type) {
+        return dirtyTypes.contains(type);
+    }
+    public synchronized void markDirty(String type) {
+        dirtyTypes.add(type);
+        dirtySegments.remove(type);
+    }
+    // Mark only one segment of a type as changed, unless the whole type is already.
+    public synchronized void markDirty(String type, String segment) {
+        if (!dirtyTypes.contains(type)) {
+            dirtyTypes.add(type);
+            dirtySegments.put(type, new HashSet<>());
+        }
+        HashSet<String> segments = dirtySegments.get(type);
+        if (segments != null) {
+            segments.add(segment);
+        }
+    }
+    // Get the segments of a type that have changed, or null if every segment needs rewriting.
+    public synchronized HashSet<String> getDirtySegments(String type) {
+        HashSet<String> segments = dirtySegments.get(type);
+        return segments == null ? null : new HashSet<>(segments);
+    }
+    public synchronized void markClean(String type) {
+        dirtyTypes.remove(type);
+        dirtySegments.remove(type);
     }
     // Methods to add records
     public void addSleepRecord(SleepSession session) {
+        load();
         sleepRecords.add(session);
+        markDirty(RecordFormat.SLEEP, RecordSegments.segment(RecordFormat.getTime(session)));
+        if (journal != null) {
+            journal.logAdd(name, RecordFormat.SLEEP, RecordFormat.toLine(session));
+        }
     }
     public void addFeedingRecord(FeedingRecord record) {
+        load();
         feedingRecords.add(record);
+        markDirty(RecordFormat.FEEDING, RecordSegments.segment(RecordFormat.getTime(record)));
+        if (journal != null) {
+            journal.logAdd(name, RecordFormat.FEEDING, RecordFormat.toLine(record));
+        }
     }
     public void addMedicationRecord(MedicationRecord record) {
+        load();
         medicationRecords.add(record);
+        markDirty(RecordFormat.MEDICATION, RecordSegments.segment(RecordFormat.getTime(record)));
+        if (journal != null) {
+            journal.logAdd(name, RecordFormat.MEDICATION, RecordFormat.toLine(record));
+        }
     }
     public void addDiaperChangeRecord(DiaperChangeRecord record) {  // Method to add diaper change record
+        load();
         diaperChangeRecords.add(record);
+        markDirty(RecordFormat.DIAPERCHANGE, RecordSegments.segment(RecordFormat.getTime(record)));
+        if (journal != null) {
+            journal.logAdd(name, RecordFormat.DIAPERCHANGE, RecordFormat.toLine(record));
+        }
     }
     public void addGrowthData(GrowthData record) {  // Method to add growth record
+        load();
         growthRecords.add(record);
+        markDirty(RecordFormat.GROWTH, RecordSegments.segment(RecordFormat.getTime(record)));
+        if (journal != null) {
+            journal.logAdd(name, RecordFormat.GROWTH, RecordFormat.toLine(record));
+        }
     }
     // Methods to delete records.
-    // Based around index in ArrayList, rather than the record object itself.
+    // Based around index in the list, rather than the record object itself.
     // This is for simplicity, since it will always match table row index in ChildProfile.
+    // The journal notes the record itself though, since the order can change once it is split into segments.
     public void deleteFeedingRecord(int index) {
-        feedingRecords.remove(index);
+        load();
+        FeedingRecord removed = feedingRecords.remove(index);
+        markDirty(RecordFormat.FEEDING, RecordSegments.segment(RecordFormat.getTime(removed)));
+        if (journal != null) {
+            journal.logDelete(name, RecordFormat.FEEDING, RecordFormat.toLine(removed));
+        }
     }
     public void deleteSleepRecord(int index) {
-        sleepRecords.remove(index);
+        load();
+        SleepSession removed = sleepRecords.remove(index);
+        markDirty(RecordFormat.SLEEP, RecordSegments.segment(RecordFormat.getTime(removed)));
+        if (journal != null) {
+            journal.logDelete(name, RecordFormat.SLEEP, RecordFormat.toLine(removed));
+        }
     }
     public void deleteMedicationRecord(int index) {
-        medicationRecords.remove(index);
+        load();
+        MedicationRecord removed = medicationRecords.remove(index);
+        markDirty(RecordFormat.MEDICATION, RecordSegments.segment(RecordFormat.getTime(removed)));
+        if (journal != null) {
+            journal.logDelete(name, RecordFormat.MEDICATION, RecordFormat.toLine(removed));
+        }
     }
     public void deleteDiaperChangeRecord(int index) {
-        diaperChangeRecords.remove(index);
+        load();
+        DiaperChangeRecord removed = diaperChangeRecords.remove(index);
+        markDirty(RecordFormat.DIAPERCHANGE, RecordSegments.segment(RecordFormat.getTime(removed)));
+        if (journal != null) {
+            journal.logDelete(name, RecordFormat.DIAPERCHANGE, RecordFormat.toLine(removed));
+        }
     }
     public void deleteGrowthRecord(int index) {
-        growthRecords.remove(index);
+        load();
+        GrowthData removed = growthRecords.remove(index);
+        markDirty(RecordFormat.GROWTH, RecordSegments.segment(RecordFormat.getTime(removed)));
+        if (journal != null) {
+            journal.logDelete(name, RecordFormat.GROWTH, RecordFormat.toLine(removed));
+        }
     }
 }
-
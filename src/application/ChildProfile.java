@@ -8,12 +8,16 @@ import java.awt.*;
 import java.text.SimpleDateFormat;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
+import java.util.function.Consumer;
 
 import com.toedter.calendar.JDateChooser;
 
 public class ChildProfile extends JPanel {
     private ChildDatabase childDatabase;
     private String childName;
+    // Keeps the save indicator up to date. The database is shared (see ChildRepository) and outlives this screen,
+    // so this is only registered with it while the screen is showing.
+    private Consumer<Boolean> saveListener;
     private DefaultTableModel feedingModel, sleepModel, medicationModel, diaperChangeModel, growthModel, reportModel;
 
     public ChildProfile(ChildDatabase childDatabase, String childName, JPanel cardPanel, CardLayout cardLayout) {
@@ -26,7 +30,16 @@ public class ChildProfile extends JPanel {
 
         JLabel nameLabel = new JLabel("Child Profile: " + childDatabase.getChild(childName).getName(), SwingConstants.CENTER);
         nameLabel.setFont(new Font("Arial", Font.BOLD, 20));
-        add(nameLabel, BorderLayout.NORTH);
+        // Small indicator in the corner, showing whether changes have been saved to the disk yet.
+        JLabel saveLabel = new JLabel();
+        saveLabel.setFont(new Font("Arial", Font.ITALIC, 12));
+        saveLabel.setBorder(BorderFactory.createEmptyBorder(0, 0, 0, 10));
+        // The database tells us from its background thread, so update the label on the Swing thread.
+        this.saveListener = saved -> SwingUtilities.invokeLater(() -> saveLabel.setText(saved ? "Saved" : "Saving\u2026"));
+        JPanel topPanel = new JPanel(new BorderLayout());
+        topPanel.add(nameLabel, BorderLayout.CENTER);
+        topPanel.add(saveLabel, BorderLayout.EAST);
+        add(topPanel, BorderLayout.NORTH);
 
         JTabbedPane tabbedPane = new JTabbedPane();
 
@@ -164,6 +177,18 @@ public class ChildProfile extends JPanel {
         });
     }
 
+    // Start and stop listening for saves as the screen is shown and thrown away.
+    @Override
+    public void addNotify() {
+        super.addNotify();
+        this.childDatabase.addSaveListener(this.saveListener);
+    }
+    @Override
+    public void removeNotify() {
+        this.childDatabase.removeSaveListener(this.saveListener);
+        super.removeNotify();
+    }
+
     private JPanel createTablePanel(DefaultTableModel model) {
         JPanel panel = new JPanel(new BorderLayout());
 
@@ -194,26 +219,26 @@ public class ChildProfile extends JPanel {
                 case "Feeding":
                     // Remove the feeding record.
                     this.childDatabase.getChild(childName).deleteFeedingRecord(row);
-                    this.childDatabase.sync();
+                    this.childDatabase.syncLater();
                     break;
                 case "Sleep":
                     // Remove the sleep record.
                     this.childDatabase.getChild(childName).deleteSleepRecord(row);
-                    this.childDatabase.sync();
+                    this.childDatabase.syncLater();
                     break;
                 case "Medication":
                     // Remove the medication record.
                     this.childDatabase.getChild(childName).deleteMedicationRecord(row);
-                    this.childDatabase.sync();
+                    this.childDatabase.syncLater();
                     break;
                 case "Diaper Change":
                     // Remove the diaper change record.
                     this.childDatabase.getChild(childName).deleteDiaperChangeRecord(row);
-                    this.childDatabase.sync();
+                    this.childDatabase.syncLater();
                     break;
                 case "Growth Record":
                     this.childDatabase.getChild(childName).deleteGrowthRecord(row);
-                    this.childDatabase.sync();
+                    this.childDatabase.syncLater();
                     break;
                 case "Report":
                     // Specify the filename to delete, which will be the fourth column (index 3).
@@ -304,7 +329,7 @@ public class ChildProfile extends JPanel {
                                 amount
                         ));
                         // Do not forget to sync changes to the disk after adding new records!
-                        this.childDatabase.sync();
+                        this.childDatabase.syncLater();
                     } catch (NumberFormatException ex) {
                         JOptionPane.showMessageDialog(this, "Please enter a valid positive number for the amount.");
                     }
@@ -388,7 +413,7 @@ public class ChildProfile extends JPanel {
                                 endTime
                         ));
                         // Do not forget to sync changes to the disk after adding new records!
-                        this.childDatabase.sync();
+                        this.childDatabase.syncLater();
                     } catch (Exception ex) {
                         JOptionPane.showMessageDialog(this, "Error: " + ex.getMessage());
                     }
@@ -454,7 +479,7 @@ public class ChildProfile extends JPanel {
                                 dosage
                         ));
                         // Do not forget to sync changes to the disk after adding new records!
-                        this.childDatabase.sync();
+                        this.childDatabase.syncLater();
                     } catch (NumberFormatException ex) {
                         JOptionPane.showMessageDialog(this, "Please enter a valid positive number for the dosage.");
                     }
@@ -515,7 +540,7 @@ public class ChildProfile extends JPanel {
                             nappyTypeComboBox.getSelectedItem().toString()
                     ));
                     // Do not forget to sync changes to the disk after adding new records!
-                    this.childDatabase.sync();
+                    this.childDatabase.syncLater();
                 }
             } else {
                 JOptionPane.showMessageDialog(this, "Please select a valid date and time.");
@@ -579,7 +604,7 @@ public class ChildProfile extends JPanel {
                                 height
                         ));
                         // Do not forget to sync changes to the disk after adding new records!
-                        this.childDatabase.sync();
+                        this.childDatabase.syncLater();
                     } catch (NumberFormatException ex) {
                         JOptionPane.showMessageDialog(this, "Please enter valid positive numbers for height and weight.");
                     }
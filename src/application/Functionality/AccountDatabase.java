@@ -3,30 +3,65 @@ package application.Functionality;
 // Import modules for file management, reading and writing.
 import java.io.File;
 import java.io.FileNotFoundException;
-import java.io.FileWriter;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.Scanner;
 
 // This class is for the accounts database and handles everything account-related!
 // The list of accounts will be an ArrayList of "Account" objects.
 // This class is also responsible for managing the accounts data file.
+// The whole app shares a single database (see get()), which is read from the disk once, and only written
+// to when an account actually changes. Every method is synchronized, so it is safe to use from any thread.
 public class AccountDatabase {
+    // The single database for the whole app, once it has been read.
+    private static AccountDatabase instance;
     // The ArrayList containing our accounts (each are Account objects).
     private ArrayList<Account> accounts;
+    // The same accounts by username, so finding one doesn't mean going through the whole list.
+    // If a username is somehow in the list twice, this has the first one, which is the one that has always been used.
+    private HashMap<String, Account> accountindex;
     // The accounts file.
     private File accountsfile;
     // The extra fields (namely - email and phone) file.
     private File extrafieldsfile;
+    // The single store everything is kept in, if the app is using one instead of separate files (see RecordStore).
+    private RecordStore store;
+    // Get the shared database, reading it from the disk the first time.
+    // Screens should use this, rather than creating their own.
+    public static synchronized AccountDatabase get() {
+        if (instance == null) {
+            instance = new AccountDatabase();
+        }
+        return instance;
+    }
     // Constructor - primarily loads account data from the accounts file.
     public AccountDatabase() {
         // Set up the ArrayList of accounts.
         this.accounts = new ArrayList<Account>();
+        this.accountindex = new HashMap<>();
         // Initialise the accounts file.
         this.accountsfile = new File(AppStorage.getDirectory() + "accounts.dat");
         // Initialise the extras file.
         this.extrafieldsfile = new File(AppStorage.getDirectory() + "extrafields.dat");
-        // Create both files if they don't yet exist.
+        this.store = RecordStore.get();
+        if (this.store != null && this.store.hasAccounts()) {
+            // Everything is already in the store, so the files aren't needed.
+            this.accounts = this.store.readAccounts();
+            for (Account account : this.accounts) {
+                this.accountindex.putIfAbsent(account.getUsername(), account);
+            }
+        } else {
+            this.readFiles();
+            // With the store, this only happens the first time, so copy them in.
+            if (this.store != null) {
+                this.sync();
+            }
+        }
+    }
+    // Method to read the accounts from the accounts and extra fields files.
+    private void readFiles() {
+        // Create both files if they don't yet exist, which is the only time opening the database writes anything.
         // We need to use try/catch because it can throw an IOException error.
         try {
             // Again this returns true or false, but we are ignoring it.
@@ -53,7 +88,9 @@ public class AccountDatabase {
                     continue;
                 }
                 // Create a new account in the database using the read values.
-                this.accounts.add(new Account(line[0], line[1], line[2]));
+                Account account = new Account(line[0], line[1], line[2]);
+                this.accounts.add(account);
+                this.accountindex.putIfAbsent(account.getUsername(), account);
             }
             // Close the stream.
             accountsfileread.close();
@@ -69,7 +106,11 @@ public class AccountDatabase {
                     continue;
                 }
                 // Get the account object and set the extra information for it.
-                Account account = this.getAccount(line[0]);
+                // Skip lines for accounts that don't exist, e.g. if the files got out of step.
+                Account account = this.accountindex.get(line[0]);
+                if (account == null) {
+                    continue;
+                }
                 account.setEmail(line[1]);
                 account.setPhone(line[2]);
             }
@@ -81,96 +122,92 @@ public class AccountDatabase {
             // Crash the program with a RuntimeException.
             throw new RuntimeException("An unknown error occurred while attempting to read the accounts and extra fields files.", e);
         }
-        // Finally, run a sync, for redundancy.
-        this.sync();
     }
     // Method to create a new account. Called by registration screen.
     // Note that it does not handle validation! Reg screen needs to do that.
-    public void createAccount(String username, String fullname, String password) {
+    public synchronized void createAccount(String username, String fullname, String password) {
         // Add the new account object to the accounts list, ensuring the password is hashed.
-        this.accounts.add(new Account(username, fullname, Hashing.hash(password)));
+        Account account = new Account(username, fullname, Hashing.hash(password));
+        this.accounts.add(account);
+        this.accountindex.putIfAbsent(username, account);
         // Sync changes to the disk.
         this.sync();
     }
     // Method to check whether at least one account exists.
     // i.e., used to check whether the program is being run for the first time.
-    public boolean isEmpty() {
+    public synchronized boolean isEmpty() {
         return this.accounts.isEmpty();
     }
     // Verify account credentials match an account in the database.
-    public boolean verifyAccount(String username, String password) {
-        // Check inserted credentials against
-        for (int i = 0; i < this.accounts.size(); i++) {
-            // Check if username matches.
-            if (this.accounts.get(i).getUsername().equals(username)) {
-                // Username matches, check if password matches.
-                if (this.accounts.get(i).getPasswordhash().equals(Hashing.hash(password))) {
-                    // Password also matches, valid login.
-                    return true;
-                } else {
-                    // Password does not match, invalid login.
-                    return false;
-                }
-            };
-        }
+    public synchronized boolean verifyAccount(String username, String password) {
+        Account account = this.accountindex.get(username);
         // No matches; invalid login.
-        return false;
+        if (account == null) {
+            return false;
+        }
+        // Username matches, so it is a valid login only if the password matches too.
+        return account.getPasswordhash().equals(Hashing.hash(password));
     }
     // Get the account object associated with the username.
     // Can also be used to verify whether an account exists or not.
-    public Account getAccount(String username) {
-        // Find the account object.
-        for (int i = 0; i < this.accounts.size(); i++) {
-            // Check if the username matches.
-            if (this.accounts.get(i).getUsername().equals(username)) {
-                // Return the account.
-                return this.accounts.get(i);
-            }
-        }
-        // Couldn't find the account, return nothing.
-        return null;
+    public synchronized Account getAccount(String username) {
+        // Returns nothing if there is no such account.
+        return this.accountindex.get(username);
     }
-    public void updateAccount(String username, String newFullname) { // Update the account in the database
+    public synchronized void updateAccount(String username, String newFullname) { // Update the account in the database
         // Find the account and update it in memory
         Account account = getAccount(username);
-        if (account != null) {
+        // Nothing to write if it is the same as before.
+        if (account != null && !account.getFullname().equals(newFullname)) {
             account.setFullname(newFullname);
-            // Sync changes to disk.
-            this.sync();
+            // Sync changes to disk. The name is only in the accounts file.
+            this.syncAccounts();
         }
     }
-    public void updatePassword(String username, String newPassword) {
+    public synchronized void updatePassword(String username, String newPassword) {
         Account account = getAccount(username);
         if (account != null) {
             // Set the new password by hashing it using our hasing method.
-            account.setPasswordhash(Hashing.hash(newPassword));
-            // Sync changes to disk.
-            this.sync();
+            String newPasswordhash = Hashing.hash(newPassword);
+            if (account.getPasswordhash().equals(newPasswordhash)) {
+                return;
+            }
+            account.setPasswordhash(newPasswordhash);
+            // Sync changes to disk. The password is only in the accounts file.
+            this.syncAccounts();
         }
     }
-    public void updateEmail(String username, String newEmail) {
+    public synchronized void updateEmail(String username, String newEmail) {
         Account account = getAccount(username);
-        if (account != null) {
+        if (account != null && !account.getEmail().equals(newEmail)) {
             // Set the new field.
             account.setEmail(newEmail);
-            // Sync changes to the disk.
-            this.sync();
+            // Sync changes to the disk. The email is only in the extra fields file.
+            this.syncExtraFields();
         }
     }
-    public void updatePhone(String username, String newPhone) {
+    public synchronized void updatePhone(String username, String newPhone) {
         Account account = getAccount(username);
-        if (account != null) {
+        if (account != null && !account.getPhone().equals(newPhone)) {
             // Set the new field.
             account.setPhone(newPhone);
-            // Sync changes to the disk.
-            this.sync();
+            // Sync changes to the disk. The phone is only in the extra fields file.
+            this.syncExtraFields();
         }
     }
-    public void deleteAccount(String username) {
+    public synchronized void deleteAccount(String username) {
         Account account = getAccount(username);
         if (account != null) {
             // Remove the account from our list.
             this.accounts.remove(account);
+            this.accountindex.remove(username);
+            // If the username was somehow in the list twice, the next one takes over, as it always has.
+            for (Account other : this.accounts) {
+                if (other.getUsername().equals(username)) {
+                    this.accountindex.put(username, other);
+                    break;
+                }
+            }
             // Sync changes to disk (this will auto-remove the account's entries).
             this.sync();
             // TODO: We may need to recursively delete the directory containing child data.
@@ -179,32 +216,45 @@ public class AccountDatabase {
     }
     // Method to sync changes to the disk. Introduced to avoid repetition of code.
     // This should be run after any update to an account.
-    public void sync() {
+    // Each file is written in full next to the real one and then swapped in, so a crash never leaves it half-written.
+    public synchronized void sync() {
+        this.syncAccounts();
+        this.syncExtraFields();
+    }
+    // Methods to sync just one of the files, for changes that only affect that one.
+    // With the store, both are kept together, and written all at once either way.
+    private void syncAccounts() {
+        if (this.store != null) {
+            this.store.writeAccounts(this.accounts);
+            return;
+        }
         // Update accounts (1/2).
+        StringBuilder accountscontents = new StringBuilder();
+        // Loop through every account in the database.
+        for (int i = 0; i < this.accounts.size(); i++) {
+            // Add the account data, keeping in mind our CSV format, and newline.
+            accountscontents.append(this.accounts.get(i).getUsername() + "," + this.accounts.get(i).getFullname() + "," + this.accounts.get(i).getPasswordhash() + "\n");
+        }
         try {
-            // Open the file in append = false mode, because we are re-writing all the data.
-            FileWriter accountsfilewrite = new FileWriter(this.accountsfile, false);
-            // Loop through every account in the database.
-            for (int i = 0; i < this.accounts.size(); i++) {
-                // Write the account data to the file, keeping in mind our CSV format, and newline.
-                accountsfilewrite.write(this.accounts.get(i).getUsername() + "," + this.accounts.get(i).getFullname() + "," + this.accounts.get(i).getPasswordhash() + "\n");
-            }
-            // Close the file.
-            accountsfilewrite.close();
+            DurableWriter.replace(this.accountsfile, accountscontents.toString());
         } catch (IOException e) {
             throw new RuntimeException("Unable to write data to the accounts file.", e);
         }
+    }
+    private void syncExtraFields() {
+        if (this.store != null) {
+            this.store.writeAccounts(this.accounts);
+            return;
+        }
         // Update extra fields (2/2).
+        StringBuilder extrafieldscontents = new StringBuilder();
+        // Loop through every account in the database.
+        for (int i = 0; i < this.accounts.size(); i++) {
+            // Add the extras data, in our CSV format, and again remembering newline.
+            extrafieldscontents.append(this.accounts.get(i).getUsername() + "," + this.accounts.get(i).getEmail() + "," + this.accounts.get(i).getPhone() + "\n");
+        }
         try {
-            // Again, open in append = false mode, to ensure we re-write all the data.
-            FileWriter extrafieldsfilewrite = new FileWriter(this.extrafieldsfile, false);
-            // Loop through every account in the database.
-            for (int i = 0; i < this.accounts.size(); i++) {
-                // Write the extras data to the file, in our CSV format, and again remembering newline.
-                extrafieldsfilewrite.write(this.accounts.get(i).getUsername() + "," + this.accounts.get(i).getEmail() + "," + this.accounts.get(i).getPhone() + "\n");
-            }
-            // Close the file.
-            extrafieldsfilewrite.close();
+            DurableWriter.replace(this.extrafieldsfile, extrafieldscontents.toString());
         } catch (IOException e) {
             throw new RuntimeException("Unable to write data to the extra fields file.", e);
         }
@@ -0,0 +1,76 @@
+package application.Functionality;
+
+// This class picks which points of a line chart to draw, so a chart of years of records doesn't have to draw
+// every single one. Drawing tens of thousands of points is slow, and the axis labels all run into each other,
+// even though the chart is only 800 pixels wide (see GraphGenerator).
+//
+// It uses Largest-Triangle-Three-Buckets: the points (apart from the first and last, which are always kept)
+// are split into equal buckets, one for each point to keep, and from each bucket it keeps the point making
+// the largest triangle with the point kept before it and the average of the next bucket. That keeps the peaks
+// and dips that stand out on the chart, so it looks the same as before, just with fewer points.
+// The points are taken to be evenly spaced, which is how they are drawn on a chart with a category axis.
+// Like AppStorage, it only contains static methods, so objects must not be created.
+public class ChartSampler {
+    // The most points a line chart shows. That is still a few pixels per point on the chart.
+    public static final int MAX_POINTS = 200;
+
+    // Make the constructor private and empty so objects cannot be created.
+    private ChartSampler() {}
+
+    // Method to pick at most MAX_POINTS of the values to draw, returning their indexes in order.
+    public static int[] sample(double[] values) {
+        return sample(values, MAX_POINTS);
+    }
+
+    // Method to pick at most target of the values to draw, returning their indexes in order.
+    // If there are no more values than that, they are all kept.
+    public static int[] sample(double[] values, int target) {
+        int count = values.length;
+        if (count <= target || target < 3) {
+            int[] all = new int[count];
+            for (int i = 0; i < count; i++) {
+                all[i] = i;
+            }
+            return all;
+        }
+        int[] kept = new int[target];
+        // The first point is always kept, and so is the last, with a bucket in between for each of the others.
+        kept[0] = 0;
+        double bucketsize = (double) (count - 2) / (target - 2);
+        int previous = 0;
+        for (int bucket = 0; bucket < target - 2; bucket++) {
+            int start = (int) (bucket * bucketsize) + 1;
+            int end = (int) ((bucket + 1) * bucketsize) + 1;
+            // The average of the next bucket, which for the last one is just the last point.
+            int nextstart = end;
+            int nextend = Math.min((int) ((bucket + 2) * bucketsize) + 1, count);
+            if (bucket == target - 3) {
+                end = count - 1;
+                nextstart = count - 1;
+                nextend = count;
+            }
+            double averagex = 0;
+            double averagey = 0;
+            for (int i = nextstart; i < nextend; i++) {
+                averagex += i;
+                averagey += values[i];
+            }
+            averagex /= nextend - nextstart;
+            averagey /= nextend - nextstart;
+            // Keep the point in this bucket making the largest triangle. Twice its area is enough to compare them.
+            double largest = -1;
+            int chosen = start;
+            for (int i = start; i < end; i++) {
+                double area = Math.abs((previous - averagex) * (values[i] - values[previous]) - (previous - i) * (averagey - values[previous]));
+                if (area > largest) {
+                    largest = area;
+                    chosen = i;
+                }
+            }
+            kept[bucket + 1] = chosen;
+            previous = chosen;
+        }
+        kept[target - 1] = count - 1;
+        return kept;
+    }
+}
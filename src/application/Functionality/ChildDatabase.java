@@ -10,23 +10,149 @@ import java.io.FileNotFoundException;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.time.LocalDateTime;
-import java.time.format.DateTimeParseException;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Scanner;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 
 // This is the class that shall contain all the children per account.
 // It again also handles saving data to the user's device.
 public class ChildDatabase {
+    // The longest a child's name can be. Names go into file paths and the keys of the store (see PageStore.MAX_KEY),
+    // so there has to be a limit, and the screens check it before adding a child.
+    public static final int MAX_NAME = 100;
+    // Once this many changes are waiting in the journal, they get compacted into the record files.
+    private static final int COMPACT_THRESHOLD = 1000;
+    // Compactions run on this background thread, so the screens never wait for them.
+    // It is shared by every database, so compactions always run one at a time, in order.
+    private static final ExecutorService compactor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "ChildDatabase-compactor");
+        // Don't keep the app running just for this. The journal makes an unfinished compaction safe.
+        thread.setDaemon(true);
+        return thread;
+    });
+    // How long syncLater() waits before writing, so a burst of changes is written together (in milliseconds).
+    private static final long SYNC_DELAY = 300;
+    // The journal is written on this background thread by syncLater(), so the screens never wait for the disk.
+    // Anything it hasn't written yet is still in memory, so sync() must be called before the app closes.
+    private static final ScheduledExecutorService writer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "ChildDatabase-writer");
+        thread.setDaemon(true);
+        return thread;
+    });
+    // Record files are read in parallel on these threads by loadAll(). One per core is enough to keep them busy.
+    private static final ExecutorService readers = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), runnable -> {
+        Thread thread = new Thread(runnable, "ChildDatabase-reader");
+        thread.setDaemon(true);
+        return thread;
+    });
     // The name of the account using this database.
     private String owner;
     // The list of children for the account.
     private ArrayList<Child> children;
+    // The same children by name, so finding one doesn't mean going through the whole list.
+    private HashMap<String, Child> childindex;
     private File childrenfile;
+    // The journal of record changes which have not been compacted into the record files yet.
+    private RecordJournal journal;
+    // Whether a compaction for this database is waiting or running on the background thread.
+    private boolean compacting;
+    // Journal entries for each child that hasn't been loaded yet, to be replayed once it is.
+    private HashMap<String, ArrayList<String[]>> replays;
+    // Whether any record files were found in an old format (CSV, or not split into segments), and need migrating on the next sync.
+    private boolean migrate;
+    // Whether the list of children has changed since the children file was last written.
+    private boolean childrendirty;
+    // Set if a background compaction fails, so the next one rewrites everything instead of only what changed.
+    private volatile boolean compactionfailed;
+    // How many files the last sync wrote, and how many the last compaction wrote.
+    // Compactions usually run in the background, so they are counted separately.
+    private int syncfilecount;
+    private volatile int compactionfilecount;
+    // Whether syncLater() has a write waiting on the background thread.
+    private boolean syncpending;
+    // Told whenever the changes start or finish being saved, e.g. to show it on the screen.
+    private CopyOnWriteArrayList<Consumer<Boolean>> savelisteners;
+    // The single store everything is kept in, if the app is using one instead of separate files (see RecordStore).
+    private RecordStore store;
+    // The strings used by every child's records, such as feeding types, which they all share (see RecordDictionary).
+    private RecordDictionary dictionary;
+    // The checksum of each segment (see RecordRollups) in each segment directory, as of the last compaction that wrote it.
+    // The segments only change when a compaction writes them, so they don't need reading again to check a rollup.
+    private ConcurrentHashMap<File, TreeMap<String, Long>> checksums;
+    // Note that screens should use the shared database from ChildRepository, rather than creating their own.
     public ChildDatabase(String owner) {
+        this(owner, RecordStore.get());
+    }
+
+    // Constructor that says where to read from: the store, or the files if it is null.
+    private ChildDatabase(String owner, RecordStore store) {
         this.owner = owner;
+        this.store = store;
         this.children = new ArrayList<Child>();
+        this.childindex = new HashMap<>();
+        this.compacting = false;
+        this.replays = new HashMap<>();
+        this.checksums = new ConcurrentHashMap<>();
+        this.migrate = false;
+        this.childrendirty = false;
+        this.compactionfailed = false;
+        this.syncfilecount = 0;
+        this.compactionfilecount = 0;
+        this.syncpending = false;
+        this.savelisteners = new CopyOnWriteArrayList<>();
+        this.dictionary = new RecordDictionary();
+        // Another database for the same account may still be compacting, so let it finish first.
+        awaitCompaction();
         // Initialise the top-level file that will contain these.
         this.childrenfile = new File(AppStorage.getDirectory() + this.owner + "/children.dat");
+        if (this.store != null) {
+            // The first time the account is opened with the store, copy everything in from its files.
+            if (!this.store.hasOwner(this.owner)) {
+                this.importFiles();
+            }
+            for (String name : this.store.readChildren(this.owner)) {
+                this.children.add(new Child(name, this.dictionary));
+            }
+            this.journal = new RecordJournal(this.store, this.owner);
+        } else {
+            // Open the journal. This also recovers from any compaction that a crash interrupted.
+            this.journal = new RecordJournal(this.childrenfile.getParentFile());
+            this.readChildrenFile();
+        }
+        // If a name is somehow in the list twice, the first one is the one that gets used, as before.
+        for (Child child : this.children) {
+            this.childindex.putIfAbsent(child.getName(), child);
+        }
+        // The record files may be behind, so the changes in the journal will need replaying on top of them.
+        // Sort the entries by child, so each child only replays its own when it gets loaded.
+        for (String[] entry : this.journal.readEntries()) {
+            // Skip entries for children that no longer exist.
+            if (this.getChild(entry[3]) == null) {
+                continue;
+            }
+            this.replays.computeIfAbsent(entry[3], name -> new ArrayList<>()).add(entry);
+        }
+        // Don't read the records of each child yet. The screens listing children only need their names,
+        // so each child's records are read the first time they are needed instead.
+        for (Child child : this.children) {
+            child.setLoader(() -> this.loadRecords(child));
+        }
+    }
+
+    // Method to read the names of the children from the children file.
+    private void readChildrenFile() {
         // We need to use try/catch because it can throw an IOException error.
         try {
             // Create parent directories if they don't already exist.
@@ -53,7 +179,7 @@ public class ChildDatabase {
                     continue;
                 }
                 // Create a new account in the database using the read values.
-                this.children.add(new Child(line));
+                this.children.add(new Child(line, this.dictionary));
             }
             // Close the stream.
             childrenfileread.close();
@@ -63,167 +189,296 @@ public class ChildDatabase {
             // Crash the program with a RuntimeException.
             throw new RuntimeException("An unknown error occurred while attempting to read the children file.", e);
         }
-        // Now, for each child, do the same for records: diaperchange, feeding, growth, medication, sleep.
-        for (int i = 0; i < this.children.size(); i++) {
-            // Record files (shorthand names, described above).
-            File drfile = new File(AppStorage.getDirectory() + this.owner + "/" + this.children.get(i).getName() + "/dr.dat");
-            File frfile = new File(AppStorage.getDirectory() + this.owner + "/" + this.children.get(i).getName() + "/fr.dat");
-            File grfile = new File(AppStorage.getDirectory() + this.owner + "/" + this.children.get(i).getName() + "/gr.dat");
-            File mrfile = new File(AppStorage.getDirectory() + this.owner + "/" + this.children.get(i).getName() + "/mr.dat");
-            File srfile = new File(AppStorage.getDirectory() + this.owner + "/" + this.children.get(i).getName() + "/sr.dat");
-            // Try to create all these files if they don't exist, same as before, crashing if it fails.
-            try {
-                // They all have the same parent directory, but it still needs to exist.
-                drfile.getParentFile().mkdirs();
-                // Now create the files themselves.
-                drfile.createNewFile();
-                frfile.createNewFile();
-                grfile.createNewFile();
-                mrfile.createNewFile();
-                srfile.createNewFile();
-            } catch (IOException e) {
-                throw new RuntimeException("Unable to initialise the record files for child " + this.children.get(i).getName() + ".", e);
-            }
-            // Now fetch each record to add to the child object.
+    }
+
+    // Method to copy an account's files into the store, the first time it is opened with the store.
+    // The files are left where they are, so nothing is lost if the app goes back to using them.
+    private void importFiles() {
+        PageStore.Batch batch = new PageStore.Batch();
+        ArrayList<String> names = new ArrayList<>();
+        // A brand new account has no files, and just starts out empty.
+        if (this.childrenfile.exists()) {
+            // Read everything the usual way, including replaying the journal file.
+            ChildDatabase files = new ChildDatabase(this.owner, (RecordStore) null);
+            files.loadAll();
+            for (Child child : files.getAllChildren()) {
+                names.add(child.getName());
+                this.store.writeRecords(batch, this.owner, child.getName(), RecordFormat.DIAPERCHANGE, child.getDiaperChangeRecords());
+                this.store.writeRecords(batch, this.owner, child.getName(), RecordFormat.FEEDING, child.getFeedingRecords());
+                this.store.writeRecords(batch, this.owner, child.getName(), RecordFormat.GROWTH, child.getGrowthRecords());
+                this.store.writeRecords(batch, this.owner, child.getName(), RecordFormat.MEDICATION, child.getMedicationRecords());
+                this.store.writeRecords(batch, this.owner, child.getName(), RecordFormat.SLEEP, child.getSleepRecords());
+            }
+        }
+        this.store.writeChildren(batch, this.owner, names);
+        this.store.apply(batch);
+    }
+
+    // Constructor that can also load every child's records straight away, rather than when first needed.
+    // This is for screens that need everything at once, since loadAll() reads the files in parallel.
+    public ChildDatabase(String owner, boolean loadall) {
+        this(owner);
+        if (loadall) {
+            this.loadAll();
+        }
+    }
+
+    // Method to load the records of every child that hasn't been loaded yet.
+    // The record files are read and parsed in parallel (one task per file), which overlaps the disk waits
+    // and uses every core. The children are then filled in one by one, in order, on this thread,
+    // so the result is exactly the same as loading them one at a time.
+    public void loadAll() {
+        // Start reading every file of every unloaded child.
+        ArrayList<Child> unloaded = new ArrayList<>();
+        ArrayList<ArrayList<Future<Child>>> reads = new ArrayList<>();
+        for (Child child : this.children) {
+            if (child.isLoaded()) {
+                continue;
+            }
+            unloaded.add(child);
+            ArrayList<Future<Child>> childreads = new ArrayList<>();
+            for (String type : RecordFormat.TYPES) {
+                childreads.add(readers.submit(() -> this.readRecords(child.getName(), type)));
+            }
+            reads.add(childreads);
+        }
+        // Now wait for each child's files, and fill the child in with them.
+        for (int i = 0; i < unloaded.size(); i++) {
+            Child child = unloaded.get(i);
+            Child records = new Child(child.getName(), this.dictionary);
             try {
-                // Diaper change records.
-                Scanner drfileread = new Scanner(drfile);
-                while (drfileread.hasNextLine()) {
-                    String[] line = drfileread.nextLine().split(",");
-                    // Bad entry if not exactly 2 fields.
-                    if (line.length != 2) {
-                        continue;
-                    }
-                    // Needs to convert to a localdatetime object, and this can again fail if input is bad.
-                    LocalDateTime time;
-                    try {
-                        time = LocalDateTime.parse(line[0]);
-                    } catch (DateTimeParseException e) {
-                        // Invalid time format that could not be parsed; skip past this.
-                        continue;
-                    }
-                    // Type is a standard String.
-                    String type = line[1];
-                    // Add the record.
-                    this.children.get(i).addDiaperChangeRecord(new DiaperChangeRecord(time, type));
+                for (Future<Child> read : reads.get(i)) {
+                    this.collectRecords(read.get(), records);
                 }
-                // End of diaper change records.
-                drfileread.close();
-                // Feeding records.
-                Scanner frfileread = new Scanner(frfile);
-                while (frfileread.hasNextLine()) {
-                    String[] line = frfileread.nextLine().split(",");
-                    // Bad entry if not exactly 3 fields.
-                    if (line.length != 3) {
-                        continue;
-                    }
-                    // Need to convert to both a LocalDateTime object and a double.
-                    LocalDateTime time;
-                    double amount;
-                    try {
-                        time = LocalDateTime.parse(line[0]);
-                        amount = Double.parseDouble(line[2]);
-                    } catch (DateTimeParseException e) {
-                        // Time could not be parsed.
-                        continue;
-                    } catch (NumberFormatException e) {
-                        // Amount could not be parsed.
-                        continue;
-                    }
-                    // Type is a standard string.
-                    String type = line[1];
-                    // Add the record.
-                    this.children.get(i).addFeedingRecord(new FeedingRecord(time, type, amount));
+            } catch (InterruptedException e) {
+                throw new RuntimeException("Interrupted while reading the record files for child " + child.getName() + ".", e);
+            } catch (ExecutionException e) {
+                // Pass on whatever went wrong while reading (usually a RuntimeException from RecordFile).
+                throw new RuntimeException("An unknown error occurred while attempting to read the record files for child " + child.getName() + ".", e.getCause());
+            }
+            // Swap the child's loader for one that uses the records we have already read, and run it.
+            child.setLoader(() -> this.fillRecords(child, records));
+            child.load();
+        }
+    }
+
+    // Method to load the records of a child from the disk: diaperchange, feeding, growth, medication, sleep.
+    // This is run by the child itself, the first time its records are needed.
+    private void loadRecords(Child child) {
+        Child records = new Child(child.getName(), this.dictionary);
+        for (String type : RecordFormat.TYPES) {
+            this.collectRecords(this.readRecords(child.getName(), type), records);
+        }
+        this.fillRecords(child, records);
+    }
+
+    // Method to read the record files of one type of a child, and return the records in a new (separate) Child object.
+    // Each type is split into segments by time (see RecordSegments), which are read oldest first.
+    // If the records are still in a single file from before, its type is marked as dirty, so it gets split up.
+    // This only touches the disk and its own Child object, so it is safe to run on any thread.
+    private Child readRecords(String name, String type) {
+        // With the store, there are no files to create or migrate.
+        if (this.store != null) {
+            return this.readStoreRecords(name, type);
+        }
+        Child records = new Child(name, this.dictionary);
+        List<Object> list = this.getRecordList(records, type);
+        File directory = this.segmentDirectory(name, type);
+        File file = this.recordFile(name, type);
+        ArrayList<String> segments = RecordSegments.list(directory);
+        if (!segments.isEmpty()) {
+            for (String segment : segments) {
+                File segmentfile = RecordSegments.file(directory, segment);
+                List<?> segmentrecords = RecordFile.read(segmentfile, type);
+                list.addAll(segmentrecords);
+                // Segments written with a different number of months, or in an older format, need writing again.
+                if (!segmentrecords.isEmpty() && (!RecordSegments.isCurrent(segment) || RecordFile.needsMigration(segmentfile))) {
+                    records.markDirty(type);
                 }
-                // End of feeding records.
-                frfileread.close();
-                // Growth records.
-                Scanner grfileread = new Scanner(grfile);
-                while (grfileread.hasNextLine()) {
-                    String[] line = grfileread.nextLine().split(",");
-                    // Bad entry if not exactly 3 fields.
-                    if (line.length != 3) {
-                        continue;
-                    }
-                    // Need to convert to LocalDateTime and two doubles.
-                    LocalDateTime time;
-                    double weight;
-                    double height;
-                    try {
-                        time = LocalDateTime.parse(line[0]);
-                        weight = Double.parseDouble(line[1]);
-                        height = Double.parseDouble(line[2]);
-                    } catch (DateTimeParseException e) {
-                        // Time could not be parsed.
-                        continue;
-                    } catch (NumberFormatException e) {
-                        // Either of the doubles could not be parsed.
-                        continue;
-                    }
-                    // Add the record.
-                    this.children.get(i).addGrowthData(new GrowthData(time, weight, height));
+            }
+            // A single file left over means a crash stopped it being deleted after it was split up.
+            // Everything in it is already in the segments.
+            file.delete();
+        } else if (file.exists()) {
+            // RecordFile reads both the binary format and the old CSV format.
+            list.addAll(RecordFile.read(file, type));
+            if (list.isEmpty()) {
+                // Nothing worth splitting up, so it can just go.
+                file.delete();
+            } else {
+                records.markDirty(type);
+            }
+        }
+        return records;
+    }
+
+    // Method to read only the records of a type for a child from (inclusive) up to (exclusive) the given times,
+    // e.g. for a chart of the last week. Children that haven't been loaded yet stay that way, and only
+    // the segments (or the part of the store) that hold those times are read, rather than every record.
+    @SuppressWarnings("unchecked")
+    public <T> ArrayList<T> getRecords(String name, String type, LocalDateTime from, LocalDateTime to) {
+        ArrayList<T> records = new ArrayList<>();
+        Child child = this.getChild(name);
+        if (child == null) {
+            return records;
+        }
+        // Loaded children may have changes that aren't on the disk yet, as may those with journal entries waiting.
+        // Their records are indexed by time, so only the ones in the window are looked at.
+        if (child.isLoaded() || this.replays.containsKey(name)) {
+            records.addAll((List<T>) ((RecordColumns<?>) this.getRecordList(child, type)).between(from, to));
+            return records;
+        }
+        if (this.store != null) {
+            return this.store.readRecords(this.owner, name, type, from, to);
+        }
+        File directory = this.segmentDirectory(name, type);
+        ArrayList<String> segments = RecordSegments.list(directory);
+        // The records are read into a separate Child, the same as when loading, so they get indexed by time too.
+        List<Object> read = this.getRecordList(new Child(name, this.dictionary), type);
+        if (segments.isEmpty()) {
+            // Still a single file, which has to be read in full.
+            if (this.recordFile(name, type).exists()) {
+                read.addAll(RecordFile.read(this.recordFile(name, type), type));
+            }
+        } else {
+            for (String segment : segments) {
+                if (RecordSegments.overlaps(segment, from, to)) {
+                    read.addAll(RecordFile.read(RecordSegments.file(directory, segment), type));
                 }
-                // End of growth records.
-                grfileread.close();
-                // Medication records.
-                Scanner mrfileread = new Scanner(mrfile);
-                while (mrfileread.hasNextLine()) {
-                    String[] line = mrfileread.nextLine().split(",");
-                    // Bad entry if not exactly 3 fields.
-                    if (line.length != 3) {
-                        continue;
-                    }
-                    // Need to convert to LocalDateTime and one double.
-                    LocalDateTime time;
-                    double dosage;
-                    try {
-                        time = LocalDateTime.parse(line[0]);
-                        dosage = Double.parseDouble(line[2]);
-                    } catch (DateTimeParseException e) {
-                        // Time could not be parsed.
-                        continue;
-                    } catch (NumberFormatException e) {
-                        // Either of the doubles could not be parsed.
-                        continue;
-                    }
-                    // Name is a normal string.
-                    String name = line[1];
-                    // Add the record.
-                    this.children.get(i).addMedicationRecord(new MedicationRecord(time, name, dosage));
+            }
+        }
+        records.addAll((List<T>) ((RecordColumns<?>) read).between(from, to));
+        return records;
+    }
+
+    // Method to get the rollup of a type for a child at the given level (see RecordRollups), for the periods
+    // from (inclusive) up to (exclusive) the given times, e.g. the total slept each week for a chart of the year.
+    // The rollup files are used where they are up to date, so the records themselves don't need to be read.
+    // A rollup file that is missing or out of date is worked out from the records instead, and written again
+    // in the background. With the store there are no rollup files, so it is always worked out from the records.
+    // Either time can be null for no limit.
+    public ArrayList<RecordRollups.Bucket> getRollup(String name, String type, String level, LocalDateTime from, LocalDateTime to) {
+        Child child = this.getChild(name);
+        if (child == null) {
+            return new ArrayList<>();
+        }
+        if (this.store != null) {
+            return RecordRollups.slice(RecordRollups.compute((RecordColumns<?>) this.getRecordList(child, type), level), level, from, to);
+        }
+        File directory = this.segmentDirectory(name, type);
+        File file = RecordRollups.file(directory, level);
+        // Loaded children may have changes that aren't on the disk yet, as may those with journal entries waiting.
+        if (child.isLoaded() || this.replays.containsKey(name)) {
+            RecordColumns<?> records = (RecordColumns<?>) this.getRecordList(child, type);
+            boolean compacting;
+            synchronized (this) {
+                compacting = this.compacting;
+            }
+            // While a compaction is running, the files are behind the records in a way the dirty flags don't show.
+            TreeMap<Long, RecordRollups.Bucket> buckets = compacting ? null : RecordRollups.read(file, RecordRollups.stamp(this.segmentChecksums(directory)));
+            if (buckets != null && child.isDirty(type)) {
+                // The file is only missing the segments that changed since, which can be worked out again on top.
+                HashSet<String> changed = child.getDirtySegments(type);
+                if (changed == null || records.isSleep()) {
+                    buckets = null;
+                } else {
+                    RecordRollups.update(buckets, records, level, changed);
                 }
-                // End of medication records.
-                mrfileread.close();
-                // Sleeping records.
-                Scanner srfileread = new Scanner(srfile);
-                while (srfileread.hasNextLine()) {
-                    String[] line = srfileread.nextLine().split(",");
-                    // Bad entry if not exactly 3 fields.
-                    if (line.length != 3) {
-                        continue;
-                    }
-                    // Both are LocalDateTime objects.
-                    LocalDateTime record;
-                    LocalDateTime start;
-                    LocalDateTime end;
-                    try {
-                        record = LocalDateTime.parse(line[0]);
-                        start = LocalDateTime.parse(line[1]);
-                        end = LocalDateTime.parse(line[2]);
-                    } catch (DateTimeParseException e) {
-                        // Time could not be parsed.
-                        continue;
-                    }
-                    // Add the record.
-                    this.children.get(i).addSleepRecord(new SleepSession(record, start, end));
+            }
+            if (buckets == null) {
+                buckets = RecordRollups.compute(records, level);
+            }
+            return RecordRollups.slice(buckets, level, from, to);
+        }
+        long stamp = RecordRollups.stamp(this.segmentChecksums(directory));
+        TreeMap<Long, RecordRollups.Bucket> buckets = RecordRollups.read(file, stamp);
+        if (buckets != null) {
+            return RecordRollups.slice(buckets, level, from, to);
+        }
+        // Work it out from the records on the disk, without loading the child.
+        RecordColumns<?> records = (RecordColumns<?>) this.getRecordList(this.readRecords(name, type), type);
+        // Records still in a single file get their rollups once they are split into segments, on the next compaction.
+        if (!RecordSegments.list(directory).isEmpty()) {
+            compactor.submit(() -> {
+                try {
+                    this.rebuildRollups(directory, records, stamp);
+                } catch (IOException e) {
+                    // The rollups will just be worked out from the records again next time.
+                    e.printStackTrace();
                 }
-                // End of sleeping records.
-                srfileread.close();
-            } catch (FileNotFoundException e) {
-                // Again, we've already verified the existence of all the files.
-                // Crash with a generic runtime exception.
-                throw new RuntimeException("An unknown error occurred while attempting to read the record files for child " + this.children.get(i).getName() + ".", e);
+            });
+        }
+        return RecordRollups.slice(RecordRollups.compute(records, level), level, from, to);
+    }
+
+    // Method to write every rollup of a type again from its records, unless its segments have changed since they were read.
+    // This runs on the compactor thread, so it can't get mixed up with a compaction writing the same files.
+    private void rebuildRollups(File directory, RecordColumns<?> records, long stamp) throws IOException {
+        if (RecordRollups.stamp(directory) != stamp) {
+            return;
+        }
+        for (String level : RecordRollups.LEVELS) {
+            File file = RecordRollups.file(directory, level);
+            File tmpfile = new File(file.getPath() + ".tmp");
+            RecordRollups.write(tmpfile, stamp, RecordRollups.compute(records, level));
+            // A rollup doesn't hold anything that isn't in the segments, so there is no need to force it on to the disk first.
+            DurableWriter.move(tmpfile, file);
+        }
+    }
+
+    // Method to read one record type of a child from the store, and return the records in a new (separate) Child object.
+    private Child readStoreRecords(String name, String type) {
+        Child records = new Child(name, this.dictionary);
+        List<Object> list = this.getRecordList(records, type);
+        switch (type) {
+            case RecordFormat.DIAPERCHANGE:
+                list.addAll(this.store.readDiaperChanges(this.owner, name));
+                break;
+            case RecordFormat.FEEDING:
+                list.addAll(this.store.readFeedings(this.owner, name));
+                break;
+            case RecordFormat.GROWTH:
+                list.addAll(this.store.readGrowths(this.owner, name));
+                break;
+            case RecordFormat.MEDICATION:
+                list.addAll(this.store.readMedications(this.owner, name));
+                break;
+            case RecordFormat.SLEEP:
+                list.addAll(this.store.readSleeps(this.owner, name));
+                break;
+        }
+        return records;
+    }
+
+    // Method to gather the records read from one file into the records of the whole child, including whether it needs migrating.
+    private void collectRecords(Child file, Child records) {
+        file.copyRecordsTo(records);
+        for (String type : RecordFormat.TYPES) {
+            if (file.isDirty(type)) {
+                records.markDirty(type);
+            }
+        }
+    }
+
+    // Method to fill a child in with the records read from its files, and replay its journal entries on top.
+    private void fillRecords(Child child, Child records) {
+        records.copyRecordsTo(child);
+        // Marking migrated files as dirty makes the next sync compact them. This only ever happens once per file.
+        for (String type : RecordFormat.TYPES) {
+            if (records.isDirty(type)) {
+                child.markDirty(type);
+                this.migrate = true;
+            }
+        }
+        // Replay this child's changes from the journal on top of the record files.
+        ArrayList<String[]> entries = this.replays.remove(child.getName());
+        if (entries != null) {
+            for (String[] entry : entries) {
+                this.replay(child, entry);
             }
         }
+        // From now on, every change to the child's records gets noted in the journal.
+        child.setJournal(this.journal);
     }
 
     // Method to check if this database is empty. May be unneeded, but doesn't hurt to have it anyway.
@@ -235,25 +490,26 @@ public class ChildDatabase {
     public void addChild(String name) {
         // NOTE: The code that calls this method is responsible for ensuring duplicates are avoided.
         // We are going to throw an exception if so, so remember to preemptively ensure we can't!
+        // The same goes for names that are too long.
+        if (name.length() > MAX_NAME) {
+            throw new RuntimeException("The name of child " + name + " is too long. Names can be at most " + MAX_NAME + " characters.");
+        }
         if (this.getChild(name) == null) {
-            this.children.add(new Child(name));
+            Child child = new Child(name, this.dictionary);
+            child.setJournal(this.journal);
+            this.children.add(child);
+            this.childindex.put(name, child);
+            this.childrendirty = true;
         } else {
             throw new RuntimeException("Child " + name + " already exists in the database. Ensure each child has a unique name.");
         }
-        // Sync changes to the disk.
-        this.sync();
+        // Sync changes to the disk, including the list of children, before returning.
+        this.compact();
     }
 
-    // Method to get a child object from its name.
+    // Method to get a child object from its name, or null if there isn't one.
     public Child getChild(String name) {
-        // Loop through every child to find the one we are looking for.
-        for (int i = 0; i < this.children.size(); i++) {
-            if (this.children.get(i).getName().equals(name)) {
-                return this.children.get(i);
-            }
-        }
-        // Nothing was found, return empty object.
-        return null;
+        return this.childindex.get(name);
     }
 
     // Method to delete a child object from the database.
@@ -262,17 +518,24 @@ public class ChildDatabase {
         for (int i = 0; i < this.children.size(); i++) {
             if (this.children.get(i).getName().equals(name)) {
                 this.children.remove(i);
+                this.childrendirty = true;
             }
         }
-        // Sync changes to the disk.
-        this.sync();
+        this.childindex.remove(name);
+        // Forget any journal entries it had waiting to be replayed, since they are about to be compacted away.
+        this.replays.remove(name);
+        // Sync changes to the disk, including the list of children, before returning.
+        // This also clears the journal, so the child's old entries can't be replayed on to a new child with the same name.
+        this.compact();
         // Delete leftover child's data from the disk.
-        new File(AppStorage.getDirectory() + this.owner + "/" + name + "/dr.dat").delete();
-        new File(AppStorage.getDirectory() + this.owner + "/" + name + "/fr.dat").delete();
-        new File(AppStorage.getDirectory() + this.owner + "/" + name + "/gr.dat").delete();
-        new File(AppStorage.getDirectory() + this.owner + "/" + name + "/mr.dat").delete();
-        new File(AppStorage.getDirectory() + this.owner + "/" + name + "/sr.dat").delete();
-        new File(AppStorage.getDirectory() + this.owner + "/" + name).delete();
+        if (this.store != null) {
+            this.store.deleteRecords(this.owner, name);
+            return;
+        }
+        deleteAll(new File(AppStorage.getDirectory() + this.owner + "/" + name));
+        for (String type : RecordFormat.TYPES) {
+            this.checksums.remove(this.segmentDirectory(name, type));
+        }
     }
 
     // Method to get the full list of children from the database.
@@ -283,92 +546,456 @@ public class ChildDatabase {
     // Method to sync any changes to the disk, e.g., when a record is added to a child.
     // Will be called automatically for addChild and deleteChild, but not for records!
     // This should be manually called as often as is necessary to prevent data loss.
+    // Record changes are only appended to the journal here, which is a single small write.
+    // The record files themselves are rewritten in the background once the journal gets long.
     public void sync() {
-        // First, update the list of children.
-        try {
-            // Open the file in append = false mode, because we are re-writing all the data.
-            FileWriter childrenfilewrite = new FileWriter(this.childrenfile, false);
-            // Loop through every child in the database.
-            for (int i = 0; i < this.children.size(); i++) {
-                // Write the child's name to the file, remembering the newline at the end of each line.
-                childrenfilewrite.write(this.children.get(i).getName() + "\n");
-            }
-            // Close the file.
-            childrenfilewrite.close();
-        } catch (IOException e) {
-            throw new RuntimeException("Unable to write data to the children file.", e);
+        this.syncfilecount = this.journal.flush();
+        this.checkCompaction();
+        this.notifySaved();
+    }
+
+    // Method to sync changes to the disk in the background, returning straight away.
+    // This is for the screens, so they don't freeze while the disk is written to.
+    // The write waits a moment first, so that a burst of changes (e.g. several records logged in a row)
+    // are all written together. Anything not written yet is written by the next call to sync().
+    public void syncLater() {
+        // The compaction takes its snapshot of the records straight away, so it has to start on this thread.
+        this.checkCompaction();
+        synchronized (this) {
+            // A write is already waiting, and it will pick up this change as well.
+            if (this.syncpending) {
+                return;
+            }
+            this.syncpending = true;
         }
-        // Now go through each child in the database and sync their records.
-        for (int i = 0; i < this.children.size(); i++) {
-            // Files for each record type - diaper, feeding, growth, medication, sleeping
-            File drfile = new File(AppStorage.getDirectory() + this.owner + "/" + this.children.get(i).getName() + "/dr.dat");
-            File frfile = new File(AppStorage.getDirectory() + this.owner + "/" + this.children.get(i).getName() + "/fr.dat");
-            File grfile = new File(AppStorage.getDirectory() + this.owner + "/" + this.children.get(i).getName() + "/gr.dat");
-            File mrfile = new File(AppStorage.getDirectory() + this.owner + "/" + this.children.get(i).getName() + "/mr.dat");
-            File srfile = new File(AppStorage.getDirectory() + this.owner + "/" + this.children.get(i).getName() + "/sr.dat");
-            // Try to create all these files if they don't exist, same as before, crashing if it fails.
+        for (Consumer<Boolean> listener : this.savelisteners) {
+            listener.accept(false);
+        }
+        writer.schedule(() -> {
+            synchronized (this) {
+                // Anything changed from here on needs another write.
+                this.syncpending = false;
+            }
             try {
-                // They all have the same parent directory, but it still needs to exist.
-                drfile.getParentFile().mkdirs();
-                // Now create the files themselves.
-                drfile.createNewFile();
-                frfile.createNewFile();
-                grfile.createNewFile();
-                mrfile.createNewFile();
-                srfile.createNewFile();
-            } catch (IOException e) {
-                throw new RuntimeException("Unable to initialise the record files for child " + this.children.get(i).getName() + ".", e);
-            }
-            // Now try to update each file.
+                this.journal.flush();
+                this.notifySaved();
+            } catch (RuntimeException e) {
+                // The changes are still in memory, so the next sync will try again.
+                e.printStackTrace();
+            }
+        }, SYNC_DELAY, TimeUnit.MILLISECONDS);
+    }
+
+    // Add a listener which is told whenever there are changes being saved (false), and once they are saved (true).
+    // Note that it can be called from the background thread, so screens must pass it on to the Swing thread.
+    public void addSaveListener(Consumer<Boolean> listener) {
+        this.savelisteners.add(listener);
+        listener.accept(!this.hasUnsavedChanges());
+    }
+    // Remove a listener again, e.g. once its screen is gone, since the database outlives it (see ChildRepository).
+    public void removeSaveListener(Consumer<Boolean> listener) {
+        this.savelisteners.remove(listener);
+    }
+
+    // Check whether any changes are still waiting to be written to the disk.
+    public synchronized boolean hasUnsavedChanges() {
+        return this.syncpending;
+    }
+
+    // Helper method to tell the listeners everything is saved, unless more changes came in meanwhile.
+    private void notifySaved() {
+        if (this.hasUnsavedChanges()) {
+            return;
+        }
+        for (Consumer<Boolean> listener : this.savelisteners) {
+            listener.accept(true);
+        }
+    }
+
+    // Helper method to start a compaction if the journal has got long, or record files need migrating.
+    private void checkCompaction() {
+        if (this.journal.size() >= COMPACT_THRESHOLD || this.migrate) {
+            this.scheduleCompaction();
+        }
+    }
+
+    // Method to compact the journal into the record files on the background thread.
+    private void scheduleCompaction() {
+        synchronized (this) {
+            // Only one compaction per database at a time. Any changes made in the meantime stay in the journal.
+            if (this.compacting) {
+                return;
+            }
+            this.compacting = true;
+        }
+        // Take the snapshot now, while nothing else is changing the records.
+        boolean writechildren = this.childrendirty || this.compactionfailed;
+        ArrayList<Child> snapshot = this.snapshot();
+        long seq = this.journal.getLastSequence();
+        compactor.submit(() -> {
             try {
-                // Diaper change records (1/5).
-                FileWriter drfilewrite = new FileWriter(drfile, false);
-                // Go through every diaper change record.
-                for (int j = 0; j < this.children.get(i).getDiaperChangeRecords().size(); j++) {
-                    // Write the diaper change record in the way we expect to read it back.
-                    drfilewrite.write(this.children.get(i).getDiaperChangeRecords().get(j).getTime() + "," + this.children.get(i).getDiaperChangeRecords().get(j).getType() + "\n");
+                this.compactionfilecount = this.writeSnapshot(snapshot, writechildren, seq);
+            } catch (RuntimeException e) {
+                // Nothing is lost, since the journal still has everything. The next sync will try again.
+                // The snapshot already marked its records as clean though, so make sure it rewrites everything.
+                this.compactionfailed = true;
+                e.printStackTrace();
+            } finally {
+                synchronized (this) {
+                    this.compacting = false;
                 }
-                // End of diaper change records.
-                drfilewrite.close();
-                // Feeding records (2/5).
-                FileWriter frfilewrite = new FileWriter(frfile, false);
-                // Go through every feeding record.
-                for (int j = 0; j < this.children.get(i).getFeedingRecords().size(); j++) {
-                    // Write the feeling record in the way we expect to read it back.
-                    frfilewrite.write(this.children.get(i).getFeedingRecords().get(j).getTime() + "," + this.children.get(i).getFeedingRecords().get(j).getType() + "," + this.children.get(i).getFeedingRecords().get(j).getAmount() + "\n");
+            }
+        });
+    }
+
+    // Method to compact the journal into the record files right away, and wait for it to finish.
+    // Used when the list of children changes, since that is rare and needs to be on the disk before returning.
+    private void compact() {
+        this.journal.flush();
+        // Let any compaction already on the background thread finish first, so the files are written in order.
+        awaitCompaction();
+        boolean writechildren = this.childrendirty || this.compactionfailed;
+        this.compactionfilecount = this.writeSnapshot(this.snapshot(), writechildren, this.journal.getLastSequence());
+        this.syncfilecount += this.compactionfilecount;
+    }
+
+    // The number of files written by the last call to sync (or addChild/deleteChild).
+    // Logging a single record writes just the journal, so this is usually 1.
+    public int getSyncFileCount() {
+        return this.syncfilecount;
+    }
+
+    // The number of files written by the last compaction, which is only the record files that had changed.
+    public int getCompactionFileCount() {
+        return this.compactionfilecount;
+    }
+
+    // Wait for every compaction that has been handed to the background thread so far.
+    private static void awaitCompaction() {
+        try {
+            // The thread runs tasks in order, so once this empty one is done, so is everything before it.
+            compactor.submit(() -> {}).get();
+        } catch (InterruptedException | ExecutionException e) {
+            throw new RuntimeException("Interrupted while waiting for the record files to be compacted.", e);
+        }
+    }
+
+    // Make a copy of every child, so the records can be written out while the screens keep changing the originals.
+    // Only the record lists that changed are copied (and marked as dirty in the copy, along with which segments
+    // changed), since only those get written.
+    // The records themselves never change once created, so only the lists need to be copied.
+    private ArrayList<Child> snapshot() {
+        // If the last compaction failed, we can't trust the dirty flags, so write everything.
+        boolean everything = this.compactionfailed;
+        this.compactionfailed = false;
+        this.childrendirty = false;
+        this.migrate = false;
+        ArrayList<Child> snapshot = new ArrayList<>();
+        for (Child child : this.children) {
+            Child copy = new Child(child.getName(), this.dictionary);
+            // A child that hasn't been loaded has nothing to write, unless it has changes waiting in the journal.
+            // Those must be loaded now, since the journal is trimmed once the compaction is done.
+            if (!child.isLoaded()) {
+                if (!this.replays.containsKey(child.getName())) {
+                    snapshot.add(copy);
+                    continue;
+                }
+                child.load();
+            }
+            for (String type : RecordFormat.TYPES) {
+                if (!everything && !child.isDirty(type)) {
+                    continue;
                 }
-                // End of feeding records.
-                frfilewrite.close();
-                // Growth records (3/5).
-                FileWriter grfilewrite = new FileWriter(grfile, false);
-                // Go through every growth record.
-                for (int j = 0; j < this.children.get(i).getGrowthRecords().size(); j++) {
-                    // Write the growth record in the way we expect to read it back.
-                    grfilewrite.write(this.children.get(i).getGrowthRecords().get(j).getTime() + "," + this.children.get(i).getGrowthRecords().get(j).getWeight() + "," + this.children.get(i).getGrowthRecords().get(j).getHeight() + "\n");
+                this.getRecordList(copy, type).addAll(this.getRecordList(child, type));
+                // Pass on which segments changed, so only those get written.
+                HashSet<String> segments = everything ? null : child.getDirtySegments(type);
+                if (segments == null) {
+                    copy.markDirty(type);
+                } else {
+                    for (String segment : segments) {
+                        copy.markDirty(type, segment);
+                    }
                 }
-                // End of growth records.
-                grfilewrite.close();
-                // Medication records (4/5).
-                FileWriter mrfilewrite = new FileWriter(mrfile, false);
-                // Go through every medication record.
-                for (int j = 0; j < this.children.get(i).getMedicationRecords().size(); j++) {
-                    // Write the medication record in the way we expect to read it back.
-                    mrfilewrite.write(this.children.get(i).getMedicationRecords().get(j).getTime() + "," + this.children.get(i).getMedicationRecords().get(j).getName() + "," + this.children.get(i).getMedicationRecords().get(j).getDosage() + "\n");
+            }
+            // The copy will be written out, so the original is clean from here on.
+            for (String type : RecordFormat.TYPES) {
+                child.markClean(type);
+            }
+            snapshot.add(copy);
+        }
+        return snapshot;
+    }
+
+    // Write a snapshot of the children into the children file (if asked to) and the record files that changed.
+    // Everything is written to .tmp files first, and only moved into place once it has all been written.
+    // Once done, the journal entries up to seq are in the record files, so they are trimmed from the journal.
+    // Returns the number of files written, including the journal itself if anything had to be trimmed.
+    private int writeSnapshot(ArrayList<Child> snapshot, boolean writechildren, long seq) {
+        if (this.store != null) {
+            return this.writeStoreSnapshot(snapshot, writechildren, seq);
+        }
+        ArrayList<File> tmpfiles = new ArrayList<>();
+        // Files that are no longer needed once everything else is in place.
+        ArrayList<File> deletefiles = new ArrayList<>();
+        // The checksums of the segments in each directory written to, once everything is in place.
+        HashMap<File, TreeMap<String, Long>> written = new HashMap<>();
+        this.journal.beginCheckpoint();
+        try {
+            // First, update the list of children.
+            if (writechildren) {
+                File childrentmpfile = new File(this.childrenfile.getPath() + ".tmp");
+                tmpfiles.add(childrentmpfile);
+                FileWriter childrenfilewrite = new FileWriter(childrentmpfile, false);
+                // Loop through every child in the database.
+                for (int i = 0; i < snapshot.size(); i++) {
+                    // Write the child's name to the file, remembering the newline at the end of each line.
+                    childrenfilewrite.write(snapshot.get(i).getName() + "\n");
                 }
-                // End of medication records.
-                mrfilewrite.close();
-                // Sleeping records.
-                FileWriter srfilewrite = new FileWriter(srfile, false);
-                // Go through every sleeping record.
-                for (int j = 0; j < this.children.get(i).getSleepRecords().size(); j++) {
-                    // Write the sleeping record in the way we expect to read it back.
-                    srfilewrite.write(this.children.get(i).getSleepRecords().get(j).getRecordTime() + "," + this.children.get(i).getSleepRecords().get(j).getStartTime() + "," + this.children.get(i).getSleepRecords().get(j).getEndTime() + "\n");
+                // Close the file.
+                childrenfilewrite.close();
+            }
+            // Now go through each child in the database and write the segments that changed.
+            for (Child child : snapshot) {
+                for (String type : RecordFormat.TYPES) {
+                    if (child.isDirty(type)) {
+                        this.writeSegments(child, type, tmpfiles, deletefiles, written);
+                    }
                 }
-                // End of sleeping records.
-                srfilewrite.close();
-            } catch (IOException e) {
-                throw new RuntimeException("Unable to write data to the record files for child " + this.children.get(i).getName() + ".", e);
+            }
+        } catch (IOException e) {
+            // Throw away what was written, since the journal still has all the changes.
+            this.journal.abortCheckpoint(tmpfiles);
+            throw new RuntimeException("Unable to write data to the children and record files.", e);
+        }
+        // Everything is written, so move it all into place and trim the journal.
+        int filecount = tmpfiles.size();
+        // Forget the old checksums first, so if moving the files fails part way they are read from the disk again.
+        for (File directory : written.keySet()) {
+            this.checksums.remove(directory);
+        }
+        this.journal.commitCheckpoint(seq, tmpfiles);
+        this.checksums.putAll(written);
+        filecount += this.journal.trim(seq);
+        for (File file : deletefiles) {
+            file.delete();
+        }
+        return filecount;
+    }
+
+    // Write the segments of one type of a child that changed into .tmp files.
+    // Usually that is just the current month, since records are added as they happen.
+    // Files to delete once they are all in place are added to deletefiles, and the checksums of the segments to written.
+    private void writeSegments(Child child, String type, ArrayList<File> tmpfiles, ArrayList<File> deletefiles, HashMap<File, TreeMap<String, Long>> written) throws IOException {
+        File directory = this.segmentDirectory(child.getName(), type);
+        directory.mkdirs();
+        TreeMap<String, List<Object>> segments = RecordSegments.partition(this.getRecordList(child, type));
+        HashSet<String> dirty = child.getDirtySegments(type);
+        // Keep hold of which segments changed, to update the rollups with (see writeRollups).
+        HashSet<String> changed = dirty;
+        // The checksum of each segment once everything is in place, which the rollups get stamped with.
+        // It starts off as the segments are now, which is what the rollups on the disk should be stamped with.
+        TreeMap<String, Long> checksums = new TreeMap<>(this.segmentChecksums(directory));
+        long oldstamp = RecordRollups.stamp(checksums);
+        if (dirty == null) {
+            // Everything is being written, so any segment already there that no longer has records gets emptied.
+            for (String segment : RecordSegments.list(directory)) {
+                segments.putIfAbsent(segment, new ArrayList<>());
+            }
+            // If the records were in a single file, it goes once the segments are in place. There has to be
+            // at least one segment though, or a crash before the delete would bring the old records back.
+            File file = this.recordFile(child.getName(), type);
+            if (file.exists()) {
+                if (segments.isEmpty()) {
+                    segments.put(RecordSegments.segment(LocalDateTime.now()), new ArrayList<>());
+                }
+                deletefiles.add(file);
+            }
+            dirty = new HashSet<>(segments.keySet());
+        }
+        for (String segment : dirty) {
+            List<Object> records = segments.getOrDefault(segment, new ArrayList<>());
+            File segmentfile = RecordSegments.file(directory, segment);
+            File segmenttmpfile = this.tmpFile(segmentfile, tmpfiles);
+            RecordFile.write(segmenttmpfile, type, records);
+            // An empty segment only needs to be there until the commit, so it can't be read again as it was.
+            if (records.isEmpty()) {
+                deletefiles.add(segmentfile);
+                checksums.remove(segment);
+            } else {
+                checksums.put(segment, RecordRollups.checksum(segmenttmpfile));
+            }
+        }
+        this.writeRollups(child, type, directory, changed, oldstamp, RecordRollups.stamp(checksums), tmpfiles);
+        written.put(directory, checksums);
+    }
+
+    // Write the rollups of one type of a child (see RecordRollups) into .tmp files, to go into place with its segments.
+    // If the rollups on the disk are up to date with the segments there, only the periods around the segments that
+    // changed are worked out again. Otherwise (or if every segment is being written) they are worked out in full.
+    // The old stamp is of the segments as they are now, before the new ones (with the new stamp) are moved into place.
+    private void writeRollups(Child child, String type, File directory, HashSet<String> changed, long oldstamp, long stamp, ArrayList<File> tmpfiles) throws IOException {
+        RecordColumns<?> records = (RecordColumns<?>) this.getRecordList(child, type);
+        for (String level : RecordRollups.LEVELS) {
+            File file = RecordRollups.file(directory, level);
+            TreeMap<Long, RecordRollups.Bucket> buckets = null;
+            if (changed != null && !records.isSleep()) {
+                buckets = RecordRollups.read(file, oldstamp);
+            }
+            if (buckets == null) {
+                buckets = RecordRollups.compute(records, level);
+            } else {
+                RecordRollups.update(buckets, records, level, changed);
+            }
+            RecordRollups.write(this.tmpFile(file, tmpfiles), stamp, buckets);
+        }
+    }
+
+    // Write a snapshot into the store instead. Everything goes into one batch along with the checkpoint,
+    // which the store applies all at once, so there are no .tmp files or recovery to worry about.
+    // Returns the number of files written, which is always just the store.
+    private int writeStoreSnapshot(ArrayList<Child> snapshot, boolean writechildren, long seq) {
+        PageStore.Batch batch = new PageStore.Batch();
+        if (writechildren) {
+            ArrayList<String> names = new ArrayList<>();
+            for (Child child : snapshot) {
+                names.add(child.getName());
+            }
+            this.store.writeChildren(batch, this.owner, names);
+        }
+        for (Child child : snapshot) {
+            for (String type : RecordFormat.TYPES) {
+                if (child.isDirty(type)) {
+                    this.store.writeRecords(batch, this.owner, child.getName(), type, this.getRecordList(child, type));
+                }
+            }
+        }
+        this.journal.commitCheckpoint(seq, batch);
+        return 1;
+    }
+
+    // Apply one journal entry (sequence, operation, type, child, argument) to the child.
+    // Any entry that no longer makes sense, e.g. deleting a record that isn't there, is skipped past.
+    private void replay(Child child, String[] entry) {
+        if (entry[1].equals("+")) {
+            // Add the record, in the same way as loading it from its record file.
+            switch (entry[2]) {
+                case RecordFormat.DIAPERCHANGE:
+                    DiaperChangeRecord dr = RecordFormat.parseDiaperChange(entry[4]);
+                    if (dr != null) {
+                        child.addDiaperChangeRecord(dr);
+                    }
+                    break;
+                case RecordFormat.FEEDING:
+                    FeedingRecord fr = RecordFormat.parseFeeding(entry[4]);
+                    if (fr != null) {
+                        child.addFeedingRecord(fr);
+                    }
+                    break;
+                case RecordFormat.GROWTH:
+                    GrowthData gr = RecordFormat.parseGrowth(entry[4]);
+                    if (gr != null) {
+                        child.addGrowthData(gr);
+                    }
+                    break;
+                case RecordFormat.MEDICATION:
+                    MedicationRecord mr = RecordFormat.parseMedication(entry[4]);
+                    if (mr != null) {
+                        child.addMedicationRecord(mr);
+                    }
+                    break;
+                case RecordFormat.SLEEP:
+                    SleepSession sr = RecordFormat.parseSleep(entry[4]);
+                    if (sr != null) {
+                        child.addSleepRecord(sr);
+                    }
+                    break;
+            }
+        } else {
+            // Delete the record, as long as it exists. Older journals have its index instead.
+            List<Object> records = this.getRecordList(child, entry[2]);
+            int index;
+            try {
+                index = Integer.parseInt(entry[4]);
+            } catch (NumberFormatException e) {
+                index = -1;
+                for (int i = 0; i < records.size(); i++) {
+                    if (RecordFormat.toLine(records.get(i)).equals(entry[4])) {
+                        index = i;
+                        break;
+                    }
+                }
+            }
+            if (index < 0 || index >= records.size()) {
+                return;
+            }
+            switch (entry[2]) {
+                case RecordFormat.DIAPERCHANGE:
+                    child.deleteDiaperChangeRecord(index);
+                    break;
+                case RecordFormat.FEEDING:
+                    child.deleteFeedingRecord(index);
+                    break;
+                case RecordFormat.GROWTH:
+                    child.deleteGrowthRecord(index);
+                    break;
+                case RecordFormat.MEDICATION:
+                    child.deleteMedicationRecord(index);
+                    break;
+                case RecordFormat.SLEEP:
+                    child.deleteSleepRecord(index);
+                    break;
+            }
+        }
+    }
+
+    // Helper method to get the single record file of the given type for a child, from before they were split into segments.
+    private File recordFile(String child, String type) {
+        return new File(AppStorage.getDirectory() + this.owner + "/" + child + "/" + type + ".dat");
+    }
+
+    // Helper method to get the directory holding the segments of the given type for a child.
+    private File segmentDirectory(String child, String type) {
+        return new File(AppStorage.getDirectory() + this.owner + "/" + child + "/" + type);
+    }
+
+    // Helper method to get a child's list of records of the given type, whatever type it is.
+    // This is the columns the records are kept in, so it can be changed, unlike the lists the child's getters return.
+    @SuppressWarnings("unchecked")
+    private List<Object> getRecordList(Child child, String type) {
+        return (List<Object>) (List<?>) child.getRecordColumns(type);
+    }
+
+    // Helper method to get the checksums of the segments in a directory, which are only read from the disk the first
+    // time. After that they are kept up to date by each compaction, as it writes the segments (see writeSnapshot).
+    // The map returned is shared, so it must not be changed.
+    private TreeMap<String, Long> segmentChecksums(File directory) {
+        TreeMap<String, Long> known = this.checksums.get(directory);
+        if (known == null) {
+            known = RecordRollups.checksums(directory);
+            // A compaction finishing meanwhile has newer checksums, so keep those.
+            TreeMap<String, Long> newer = this.checksums.putIfAbsent(directory, known);
+            if (newer != null) {
+                known = newer;
+            }
+        }
+        return known;
+    }
+
+    // Helper method to get the .tmp file for a record file, and remember it so it can be moved into place.
+    private File tmpFile(File file, ArrayList<File> tmpfiles) {
+        File tmpfile = new File(file.getPath() + ".tmp");
+        tmpfiles.add(tmpfile);
+        return tmpfile;
+    }
+
+    // Helper method to delete a directory and everything in it.
+    private static void deleteAll(File file) {
+        File[] list = file.listFiles();
+        if (list != null) {
+            for (File inner : list) {
+                deleteAll(inner);
             }
         }
+        file.delete();
     }
 }
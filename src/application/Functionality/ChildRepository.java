@@ -0,0 +1,43 @@
+package application.Functionality;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+
+// This class hands out a single shared ChildDatabase for each account, so every screen uses the same one.
+// Screens used to each create their own, which read every file from the disk again, and two of them
+// could overwrite each other's changes. Now the first screen to ask reads the account in, and the rest
+// (including going back and forth between screens) reuse it.
+// Like AppStorage, it only contains static methods, so objects must not be created.
+public class ChildRepository {
+    // The database of every account that has been asked for, by username.
+    private static final HashMap<String, ChildDatabase> databases = new HashMap<>();
+
+    // Make the constructor private and empty so objects cannot be created.
+    private ChildRepository() {}
+
+    // Get the shared database for an account, reading it from the disk the first time.
+    public static synchronized ChildDatabase get(String owner) {
+        ChildDatabase database = databases.get(owner);
+        if (database == null) {
+            database = new ChildDatabase(owner);
+            databases.put(owner, database);
+        }
+        return database;
+    }
+
+    // Forget the database of an account, so the next get() reads it from the disk again, e.g. on logging out.
+    // Any changes are written to the disk first, so nothing is lost.
+    public static synchronized void invalidate(String owner) {
+        ChildDatabase database = databases.remove(owner);
+        if (database != null) {
+            database.sync();
+        }
+    }
+
+    // Forget every database, writing any changes to the disk first.
+    public static synchronized void invalidateAll() {
+        for (String owner : new ArrayList<>(databases.keySet())) {
+            invalidate(owner);
+        }
+    }
+}
@@ -0,0 +1,159 @@
+package application.Functionality;
+
+// Modules for working out which day a time falls on, and keeping the days in order.
+import java.time.LocalDate;
+import java.util.Map;
+import java.util.TreeMap;
+
+// This class keeps running totals of one type of record for each day: how many there are, and the sum,
+// smallest and largest of their amount (the feeding amount, medication dosage, or weight for growth records).
+// Nappy changes only have a count. For sleep, each session is split up at midnight, and each day gets the
+// minutes slept that day, so a night's sleep counts towards both days it falls on.
+//
+// The totals are kept up to date by RecordColumns as records are added and removed, so questions like
+// "how much has been fed today" don't need to go through every record. Adding or removing a record only
+// touches its own day (or days, for sleep), and finding the smallest and largest only looks at the distinct
+// amounts that day, of which there are usually just a few.
+public class DailyAggregates {
+    private static final long SECONDS_PER_DAY = 86400;
+
+    // The running totals for each day, by its number of days since 1970.
+    private TreeMap<Long, Day> days;
+
+    public DailyAggregates() {
+        this.days = new TreeMap<>();
+    }
+
+    // The totals for one day, or a number of days together, once worked out.
+    // The smallest and largest amounts are NaN when there are no records.
+    public static class Summary {
+        private final int count;
+        private final double sum;
+        private final double min;
+        private final double max;
+
+        private Summary(int count, double sum, double min, double max) {
+            this.count = count;
+            this.sum = sum;
+            this.min = min;
+            this.max = max;
+        }
+
+        public int getCount() {
+            return this.count;
+        }
+        public double getSum() {
+            return this.sum;
+        }
+        public double getMin() {
+            return this.min;
+        }
+        public double getMax() {
+            return this.max;
+        }
+    }
+
+    // The running totals for a day. Each distinct amount is counted, so the smallest and largest are still
+    // known after one of them is removed.
+    private static class Day {
+        private int count;
+        private double sum;
+        private TreeMap<Double, Integer> amounts = new TreeMap<>();
+    }
+
+    // Method to get the totals for a day.
+    public Summary getDay(LocalDate date) {
+        Day day = this.days.get(date.toEpochDay());
+        if (day == null) {
+            return new Summary(0, 0, Double.NaN, Double.NaN);
+        }
+        return new Summary(day.count, day.sum, day.amounts.firstKey(), day.amounts.lastKey());
+    }
+
+    // Method to get the totals for the days from (inclusive) up to (exclusive) the given dates, all together.
+    // Only days that have records are looked at.
+    public Summary getDays(LocalDate from, LocalDate to) {
+        int count = 0;
+        double sum = 0;
+        double min = Double.NaN;
+        double max = Double.NaN;
+        for (Day day : this.days.subMap(from.toEpochDay(), to.toEpochDay()).values()) {
+            count += day.count;
+            sum += day.sum;
+            min = Double.isNaN(min) ? day.amounts.firstKey() : Math.min(min, day.amounts.firstKey());
+            max = Double.isNaN(max) ? day.amounts.lastKey() : Math.max(max, day.amounts.lastKey());
+        }
+        return new Summary(count, sum, min, max);
+    }
+
+    // Method to get the totals for each day from (inclusive) up to (exclusive) the given dates, for days that have records.
+    public TreeMap<LocalDate, Summary> getEachDay(LocalDate from, LocalDate to) {
+        TreeMap<LocalDate, Summary> result = new TreeMap<>();
+        for (Map.Entry<Long, Day> entry : this.days.subMap(from.toEpochDay(), to.toEpochDay()).entrySet()) {
+            Day day = entry.getValue();
+            result.put(LocalDate.ofEpochDay(entry.getKey()), new Summary(day.count, day.sum, day.amounts.firstKey(), day.amounts.lastKey()));
+        }
+        return result;
+    }
+
+    // Methods used by RecordColumns to add or remove a record, given its time in seconds (see RecordFile).
+    void add(long seconds, double amount) {
+        this.change(Math.floorDiv(seconds, SECONDS_PER_DAY), amount, 1);
+    }
+    void remove(long seconds, double amount) {
+        this.change(Math.floorDiv(seconds, SECONDS_PER_DAY), amount, -1);
+    }
+
+    // Method used by RecordColumns when every record is removed.
+    void clear() {
+        this.days.clear();
+    }
+
+    // Methods to add or remove a sleep from start to end, split up at midnight, as minutes on each day.
+    void addSpan(long start, long end) {
+        this.changeSpan(start, end, 1);
+    }
+    void removeSpan(long start, long end) {
+        this.changeSpan(start, end, -1);
+    }
+
+    // Helper method to go through each day a sleep falls on. A sleep that ends before it starts is left out.
+    private void changeSpan(long start, long end, int change) {
+        long day = Math.floorDiv(start, SECONDS_PER_DAY);
+        while (start < end) {
+            long midnight = (day + 1) * SECONDS_PER_DAY;
+            long until = Math.min(end, midnight);
+            this.change(day, (until - start) / 60.0, change);
+            start = until;
+            day++;
+        }
+    }
+
+    // Helper method to add (1) or remove (-1) an amount from a day's totals.
+    private void change(long epochday, double amount, int change) {
+        Day day = this.days.get(epochday);
+        if (day == null) {
+            if (change < 0) {
+                return;
+            }
+            day = new Day();
+            this.days.put(epochday, day);
+        }
+        Integer amountcount = day.amounts.get(amount);
+        if (change < 0 && amountcount == null) {
+            return;
+        }
+        int newcount = (amountcount == null ? 0 : amountcount) + change;
+        if (newcount == 0) {
+            day.amounts.remove(amount);
+        } else {
+            day.amounts.put(amount, newcount);
+        }
+        day.count += change;
+        day.sum += change * amount;
+        // Days with nothing left go, so they aren't counted as having records.
+        if (day.count == 0) {
+            this.days.remove(epochday);
+        }
+    }
+}
@@ -0,0 +1,255 @@
+package application.Functionality;
+
+// Modules for file handling, writing, forcing data on to the disk, and moving files into place.
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+// This class handles writing our data files so they survive a crash.
+// Files are never rewritten in place. A new version is written next to the file and then renamed over it,
+// so a crash leaves either the old file or the new one, but never half of each.
+//
+// Renaming only protects against the app crashing, since the operating system still has the data.
+// Surviving a power cut as well means forcing the data on to the disk (fsync), which is slow,
+// so how often the last step of a write gets forced is up to the durability policy:
+// - NONE: never force it, and leave it up to the operating system.
+// - BATCHED: force everything written in the last few milliseconds together, in the background.
+//   Writes return straight away, so a power cut can lose up to that many milliseconds of changes.
+// - EVERY_COMMIT: force every write before returning. Writes from several threads at once are
+//   grouped, so they share a single round of forcing instead of each waiting for their own.
+// The policy can be set with the ce201application.durability property (none, batched or every),
+// and the batch interval with ce201application.durability.interval, or with the methods below.
+// Whatever the policy, anything that has to be on the disk before the next step of a write (e.g. a .tmp file
+// before it is renamed over the real one) is always forced straight away with barrier(). Otherwise a power cut
+// could leave the real file empty or half-written, rather than just losing the latest changes.
+// Like AppStorage, it only contains static methods, so objects must not be created.
+public class DurableWriter {
+    public enum Policy { NONE, BATCHED, EVERY_COMMIT }
+
+    // How the files written should be forced on to the disk.
+    private static volatile Policy policy = readPolicy();
+    // How long BATCHED waits before forcing the files written, in milliseconds.
+    private static volatile long interval = Long.getLong("ce201application.durability.interval", 50);
+    // BATCHED forces its files on this background thread.
+    private static final ScheduledExecutorService syncer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "DurableWriter-syncer");
+        // Don't keep the app running just for this. The operating system still writes the data out eventually.
+        thread.setDaemon(true);
+        return thread;
+    });
+    // Everything below is only used while holding this lock.
+    private static final Object lock = new Object();
+    // The group of files that the next round of forcing will cover.
+    private static Group open = new Group();
+    // Whether a round of forcing is running right now.
+    private static boolean syncing = false;
+    // Whether BATCHED has a round of forcing waiting on the background thread.
+    private static boolean batchscheduled = false;
+
+    // A set of files forced on to the disk together, and how that went.
+    private static class Group {
+        private LinkedHashSet<File> files = new LinkedHashSet<>();
+        private boolean done = false;
+        private IOException error = null;
+    }
+
+    // Make the constructor private and empty so objects cannot be created.
+    private DurableWriter() {}
+
+    // Methods to change the durability policy, e.g. from a setting.
+    public static void setPolicy(Policy newpolicy) {
+        policy = newpolicy;
+    }
+    public static Policy getPolicy() {
+        return policy;
+    }
+    public static void setBatchInterval(long milliseconds) {
+        interval = milliseconds;
+    }
+
+    // Replace the contents of a file, using a .tmp file next to it, so a crash never leaves it half-written.
+    public static void replace(File file, String contents) throws IOException {
+        replace(file, new File(file.getPath() + ".tmp"), contents);
+    }
+    // The same, but with the temporary file given, for files that have their own crash recovery.
+    public static void replace(File file, File tmpfile, String contents) throws IOException {
+        write(tmpfile, contents, false);
+        // The new contents must be on the disk before the rename, or a power cut could leave the file empty.
+        barrier(List.of(tmpfile));
+        move(tmpfile, file);
+        // And the rename itself is only on the disk once the directory is. With BATCHED, the .tmp file
+        // is gone by the time it gets forced, so the file needs including again under its real name.
+        commit(List.of(file, file.getAbsoluteFile().getParentFile()));
+    }
+
+    // Add on to the end of a file, e.g. the journal, and force it on to the disk according to the policy.
+    public static void append(File file, String contents) throws IOException {
+        write(file, contents, true);
+        commit(List.of(file));
+    }
+
+    // Move a file that has already been committed over another one, as a single step where the system allows it.
+    public static void move(File from, File to) throws IOException {
+        try {
+            Files.move(from.toPath(), to.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            // Some file systems can't do it, so do the best we can.
+            Files.move(from.toPath(), to.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    // Force files that have been written (or directories that have had files renamed in them) on to the disk,
+    // according to the policy. With EVERY_COMMIT, this only returns once they are on the disk.
+    public static void commit(List<File> files) throws IOException {
+        switch (policy) {
+            case NONE:
+                return;
+            case BATCHED:
+                synchronized (lock) {
+                    open.files.addAll(files);
+                    // The files get picked up by the round already waiting, if there is one.
+                    if (!batchscheduled) {
+                        batchscheduled = true;
+                        syncer.schedule(DurableWriter::syncBatch, interval, TimeUnit.MILLISECONDS);
+                    }
+                }
+                return;
+            case EVERY_COMMIT:
+                syncGroup(files);
+                return;
+        }
+    }
+
+    // Force files on to the disk straight away, whatever the policy, because the next step depends on them
+    // being there, e.g. renaming a .tmp file over the real file, or noting a checkpoint that says they are written.
+    // Unlike commit(), this can't be put off or skipped, since that could let the next step reach the disk first.
+    public static void barrier(List<File> files) throws IOException {
+        syncGroup(files);
+    }
+
+    // Wait for every file committed so far to be on the disk, whatever the policy.
+    // Used before the app exits, so BATCHED doesn't leave anything behind.
+    public static void commitAll() throws IOException {
+        syncGroup(List.of());
+    }
+
+    // Join the files on to the open group, and wait until the group has been forced on to the disk.
+    // Whoever finds nothing running takes the open group and forces it for everyone in it, while anyone
+    // arriving in the meantime joins the next group. So however many threads commit at once,
+    // there is only ever one round of forcing running, and one waiting.
+    private static void syncGroup(List<File> files) throws IOException {
+        Group group;
+        synchronized (lock) {
+            group = open;
+            group.files.addAll(files);
+            while (!group.done && syncing) {
+                try {
+                    lock.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Interrupted while waiting for files to be written to the disk.", e);
+                }
+            }
+            if (group.done) {
+                // Someone else forced our group while we waited.
+                if (group.error != null) {
+                    throw new IOException("Unable to write files to the disk.", group.error);
+                }
+                return;
+            }
+            // Nothing is running, so it is up to us. Anyone arriving from now on joins the next group.
+            syncing = true;
+            open = new Group();
+        }
+        try {
+            force(group.files);
+        } catch (IOException e) {
+            group.error = e;
+        }
+        synchronized (lock) {
+            group.done = true;
+            syncing = false;
+            lock.notifyAll();
+        }
+        if (group.error != null) {
+            throw group.error;
+        }
+    }
+
+    // Run by BATCHED on the background thread, to force everything committed since the last round.
+    private static void syncBatch() {
+        synchronized (lock) {
+            batchscheduled = false;
+        }
+        try {
+            syncGroup(List.of());
+        } catch (IOException e) {
+            // The files are still written, just not forced. Nobody is waiting on this, so just report it.
+            e.printStackTrace();
+        }
+    }
+
+    // Helper method to write a string to a file, either replacing or adding on to what is there.
+    private static void write(File file, String contents, boolean append) throws IOException {
+        FileOutputStream filewrite = new FileOutputStream(file, append);
+        try {
+            filewrite.write(contents.getBytes(StandardCharsets.UTF_8));
+        } finally {
+            filewrite.close();
+        }
+    }
+
+    // Helper method to force files and directories on to the disk.
+    // Files that have since been moved or deleted are skipped, since whatever replaced them was committed separately.
+    private static void force(LinkedHashSet<File> files) throws IOException {
+        for (File file : files) {
+            if (!file.exists()) {
+                continue;
+            }
+            if (file.isDirectory()) {
+                // Not every system lets a directory be opened like this (e.g. Windows), and those don't need it anyway.
+                try {
+                    FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+                    try {
+                        channel.force(true);
+                    } finally {
+                        channel.close();
+                    }
+                } catch (IOException e) {
+                    continue;
+                }
+                continue;
+            }
+            FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE);
+            try {
+                channel.force(true);
+            } finally {
+                channel.close();
+            }
+        }
+    }
+
+    // Helper method to read the policy from the ce201application.durability property, defaulting to EVERY_COMMIT.
+    private static Policy readPolicy() {
+        String value = System.getProperty("ce201application.durability", "every").toLowerCase();
+        switch (value) {
+            case "none":
+                return Policy.NONE;
+            case "batched":
+                return Policy.BATCHED;
+            default:
+                return Policy.EVERY_COMMIT;
+        }
+    }
+}
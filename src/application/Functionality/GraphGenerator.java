@@ -5,12 +5,12 @@ import application.*;
 import org.jfree.chart.*;
 import org.jfree.data.category.*;
 import org.jfree.data.general.*;
+import org.jfree.data.xy.*;
 
-import java.io.File;
-import java.io.IOException;
+import java.awt.image.BufferedImage;
+import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
-import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.List;
 
 // This is a sister class of ReportGenerator which will generate the graphs.
 // Again, all its methods are static for simplicity.
@@ -18,140 +18,137 @@ public class GraphGenerator {
     // Ensure the constructor is private and empty, to prevent instantiation of objects.
     private GraphGenerator() {}
     // Each method will generate an appropriate graph for each record type.
-    // They will return a string, which will be the name of the image file.
-    // That image file will then be put into the PDF document by ReportGenerator.
+    // They will return the graph drawn as an image, which ReportGenerator will then put into the PDF document.
+    // The image stays in memory, so there is no file to write, read back and delete, and reports can be made at the same time.
     // TODO: Support all record types.
-    public static String feedingGraph(ArrayList<FeedingRecord> records) {
+    public static BufferedImage feedingGraph(List<FeedingRecord> records) {
         // Set up the dataset for the graph.
         DefaultPieDataset dataset = new DefaultPieDataset();
         // Count the number of each food type by looping through the records.
-        // We will use a frequency map (HashMap) to store the counts of each food type.
-        HashMap<String, Integer> foodtypes = new HashMap<>();
-        for (FeedingRecord fr : records) {
-            foodtypes.put(fr.getType(), foodtypes.getOrDefault(fr.getType(), 0) + 1);
-        }
-        // Convert the map to the dataset.
-        for (HashMap.Entry<String, Integer> entry : foodtypes.entrySet()) {
-            dataset.setValue(entry.getKey(), entry.getValue());
+        // Each food type has a code in the records' dictionary, so the counts are just an array indexed by code.
+        RecordColumns<FeedingRecord> columns = RecordColumns.from(RecordColumns.FEEDING, records);
+        int[] foodtypes = countCodes(columns);
+        // Convert the counts to the dataset.
+        for (int code = 0; code < foodtypes.length; code++) {
+            if (foodtypes[code] > 0) {
+                dataset.setValue(columns.getDictionary().get(code), foodtypes[code]);
+            }
         }
         // Create the pie chart using the dataset.
         JFreeChart chart = ChartFactory.createPieChart("Frequency of food items fed", dataset, true, true, false);
-        // Try to save the graph as an image file by using our helper method.
-        File image = save(chart);
-        // Return the image filename, or nothing if it was unsuccessful.
-        if (image == null) {
-            return null;
+        // Draw the graph as an image by using our helper method.
+        return draw(chart);
+    }
+    public static BufferedImage sleepGraph(List<SleepSession> records) {
+        // Set up the dataset for the graph.
+        // Each point goes at the time of its record, rather than under a label for its date, so two sessions
+        // on the same day are both shown, instead of the second replacing the first.
+        XYSeries series = new XYSeries("Duration (hours)");
+        // Years of records would be far too many points, so only add the ones that keep the line's shape (see ChartSampler).
+        double[] durations = new double[records.size()];
+        for (int i = 0; i < durations.length; i++) {
+            durations[i] = records.get(i).getDuration();
+        }
+        for (int i : ChartSampler.sample(durations)) {
+            // The time axis counts in milliseconds, and shows them in the local time zone.
+            series.add(records.get(i).getRecordTime().atZone(ZoneId.systemDefault()).toInstant().toEpochMilli(), durations[i]);
         }
-        return image.getAbsolutePath();
+        // Create the line graph using the dataset, with the dates along the bottom.
+        JFreeChart chart = ChartFactory.createTimeSeriesChart("Sleep duration per night", "Date", "Duration (hours)", new XYSeriesCollection(series));
+        // Draw the graph as an image by using our helper method.
+        return draw(chart);
     }
-    public static String sleepGraph(ArrayList<SleepSession> records) {
+    // The same as above, but for a long stretch of time, from the total slept in each day, week or month (see RecordRollups).
+    // A year of sleep is 52 points this way, rather than one for every session.
+    public static BufferedImage sleepRollupGraph(List<RecordRollups.Bucket> buckets, String level) {
         // Set up the dataset for the graph.
         DefaultCategoryDataset dataset = new DefaultCategoryDataset();
-        // Go through each record and add it to the dataset.
-        for (SleepSession sr : records) {
-            // Only get the date of the record, not the time too, since it's not needed.
-            dataset.addValue(sr.getDuration(), "Duration (hours)", sr.getRecordTime().format(DateTimeFormatter.ofPattern("yyyy-MM-dd")));
+        // Label each period by the day it starts on, or just the month for months.
+        DateTimeFormatter format = DateTimeFormatter.ofPattern(level.equals(RecordRollups.MONTH) ? "yyyy-MM" : level.equals(RecordRollups.HOUR) ? "yyyy-MM-dd HH:00" : "yyyy-MM-dd");
+        // The rollups count sleep in minutes, so convert it to hours like the graph above.
+        double[] hours = new double[buckets.size()];
+        for (int i = 0; i < hours.length; i++) {
+            hours[i] = buckets.get(i).getSum() / 60;
         }
-        // Create the line graph using the dataset.
-        JFreeChart chart = ChartFactory.createLineChart("Sleep duration per night", "Date", "Duration (hours)", dataset);
-        // Try to save the graph as an image file by using our helper method.
-        File image = save(chart);
-        // Return the image filename, or nothing if it was unsuccessful.
-        if (image == null) {
-            return null;
+        // Hourly or daily totals over a long stretch can still be a lot of points, so sample them as above.
+        for (int i : ChartSampler.sample(hours)) {
+            dataset.addValue(hours[i], "Duration (hours)", buckets.get(i).getStart().format(format));
         }
-        return image.getAbsolutePath();
+        // Create the line graph using the dataset.
+        JFreeChart chart = ChartFactory.createLineChart("Total sleep per " + level, "Date", "Duration (hours)", dataset);
+        // Draw the graph as an image by using our helper method.
+        return draw(chart);
     }
-    public static String medicationGraph(ArrayList<MedicationRecord> records) {
+    public static BufferedImage medicationGraph(List<MedicationRecord> records) {
         // Set up the dataset for the graph.
         DefaultPieDataset dataset = new DefaultPieDataset();
-        // Count the number of each medication type by looping through the records.
-        // We will use a frequency map (HashMap) to store the counts of each medication type.
-        HashMap<String, Integer> medicationtypes = new HashMap<>();
-        for (MedicationRecord mr : records) {
-            medicationtypes.put(mr.getName(), medicationtypes.getOrDefault(mr.getName(), 0) + 1);
-        }
-        // Convert the map to the dataset.
-        for (HashMap.Entry<String, Integer> entry : medicationtypes.entrySet()) {
-            dataset.setValue(entry.getKey(), entry.getValue());
+        // Count the number of each medication type by looping through the records, in the same way as for food types.
+        RecordColumns<MedicationRecord> columns = RecordColumns.from(RecordColumns.MEDICATION, records);
+        int[] medicationtypes = countCodes(columns);
+        // Convert the counts to the dataset.
+        for (int code = 0; code < medicationtypes.length; code++) {
+            if (medicationtypes[code] > 0) {
+                dataset.setValue(columns.getDictionary().get(code), medicationtypes[code]);
+            }
         }
         // Create the pie chart using the dataset.
         JFreeChart chart = ChartFactory.createPieChart("Frequency of medication types given", dataset, true, true, false);
-        // Try to save the graph as an image file by using our helper method.
-        File image = save(chart);
-        // Return the image filename, or nothing if it was unsuccessful.
-        if (image == null) {
-            return null;
-        }
-        return image.getAbsolutePath();
+        // Draw the graph as an image by using our helper method.
+        return draw(chart);
     }
-    public static String diaperChangeGraph(ArrayList<DiaperChangeRecord> records) {
+    public static BufferedImage diaperChangeGraph(List<DiaperChangeRecord> records) {
         // Set up the dataset for the graph.
         DefaultCategoryDataset dataset = new DefaultCategoryDataset();
         // Count the number of each nappy type by looping through the records.
-        int soiledcount = 0;
-        int wetcount = 0;
-        int mixedcount = 0;
-        for (DiaperChangeRecord dr : records) {
-            switch (dr.getType()) {
-                case "Soiled nappy":
-                    soiledcount++;
-                    break;
-                case "Wet nappy":
-                    wetcount++;
-                    break;
-                case "Mixed nappy":
-                    mixedcount++;
-                    break;
-            }
-        }
+        RecordColumns<DiaperChangeRecord> columns = RecordColumns.from(RecordColumns.DIAPERCHANGE, records);
+        int[] counts = countCodes(columns);
+        int soiledcount = getCount(counts, columns.getDictionary().find("Soiled nappy"));
+        int wetcount = getCount(counts, columns.getDictionary().find("Wet nappy"));
+        int mixedcount = getCount(counts, columns.getDictionary().find("Mixed nappy"));
         // Set up the dataset for the counted values.
         dataset.addValue(soiledcount, "Occurrences", "Soiled nappy");
         dataset.addValue(wetcount, "Occurrences", "Wet nappy");
         dataset.addValue(mixedcount, "Occurrences", "Mixed nappy");
         // Create a bar chart using the dataset.
         JFreeChart chart = ChartFactory.createBarChart("Occurrences of soiled, wet and mixed nappies", "Nappy type", "Occurrences", dataset);
-        // Try to save the graph as an image file by using our helper method.
-        File image = save(chart);
-        // Return the image filename, or nothing if it was unsuccessful.
-        if (image == null) {
-            return null;
-        }
-        return image.getAbsolutePath();
+        // Draw the graph as an image by using our helper method.
+        return draw(chart);
     }
-    public static String growthRecordGraph(ArrayList<GrowthData> records) {
+    public static BufferedImage growthRecordGraph(List<GrowthData> records) {
         // Set up the dataset for the graph.
-        DefaultCategoryDataset dataset = new DefaultCategoryDataset();
-        for (GrowthData gr : records) {
-            dataset.addValue(gr.getWeight(), "Weight (kg)", String.valueOf(gr.getHeight()));
+        // Heights are numbers along the bottom rather than labels, so two measurements at the same height are both
+        // shown, instead of the second replacing the first. The series keeps them in order of height.
+        XYSeries series = new XYSeries("Weight (kg)");
+        // Only add the measurements that keep the line's shape, the same as for sleep.
+        double[] weights = new double[records.size()];
+        for (int i = 0; i < weights.length; i++) {
+            weights[i] = records.get(i).getWeight();
+        }
+        for (int i : ChartSampler.sample(weights)) {
+            series.add(records.get(i).getHeight(), weights[i]);
         }
         // Create the line graph using the dataset.
-        JFreeChart chart = ChartFactory.createLineChart("Measured weight per height", "Height (cm)", "Weight (kg)", dataset);
-        // Try to save the graph as an image file by using our helper method.
-        File image = save(chart);
-        // Return the image filename, or nothing if it was unsuccessful.
-        if (image == null) {
-            return null;
+        JFreeChart chart = ChartFactory.createXYLineChart("Measured weight per height", "Height (cm)", "Weight (kg)", new XYSeriesCollection(series));
+        // Draw the graph as an image by using our helper method.
+        return draw(chart);
+    }
+    // Helper method to count how many records have each code in their dictionary (see RecordDictionary).
+    private static int[] countCodes(RecordColumns<?> columns) {
+        int[] counts = new int[columns.getDictionary().size()];
+        for (int i = 0; i < columns.size(); i++) {
+            counts[columns.getCode(i)]++;
         }
-        return image.getAbsolutePath();
+        return counts;
     }
-    // Helper method for writing the image to disk after the graph is set up.
+    // Helper method to get the count for a code, which is -1 for a string that no record has ever used.
+    private static int getCount(int[] counts, int code) {
+        return code < 0 ? 0 : counts[code];
+    }
+    // Helper method for drawing the image after the graph is set up.
     // This is used to avoid duplication of code.
-    private static File save(JFreeChart chart) {
-        // Set up the file object to use, ensuring it's out of the try/catch block.
-        File image;
-        // Try to save the graph as a PNG image file.
-        try {
-            // Set up the file. ReportGenerator will auto-delete it after it has been used.
-            image = new File(AppStorage.getDirectory() + "/.tmp_graphgenerator.png");
-            // Save the chart as a PNG image to the file.
-            // Make it big and let ReportGenerator scale it down, to reduce blurriness.
-            ChartUtils.saveChartAsPNG(image, chart, 800, 600);
-        } catch (IOException e) {
-            e.printStackTrace();
-            return null;
-        }
-        // Return the image file object.
-        return image;
+    private static BufferedImage draw(JFreeChart chart) {
+        // Make it big and let ReportGenerator scale it down, to reduce blurriness.
+        // The background is solid, so leave out transparency, which would only make the image bigger in the PDF.
+        return chart.createBufferedImage(800, 600, BufferedImage.TYPE_INT_RGB, null);
     }
 }
\ No newline at end of file
@@ -0,0 +1,724 @@
+package application.Functionality;
+
+// Modules for file handling, reading/writing pages, and checking pages weren't torn by a crash.
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+// This class is a small embedded key-value store, kept in a single file of fixed-size pages.
+// Keys and values are both byte arrays, and keys are kept sorted (comparing bytes as unsigned),
+// so any range of keys can be read in order. RecordStore builds our data on top of this.
+//
+// The keys are held in a B+ tree: leaf pages hold the keys and values, and branch pages hold the keys
+// that separate their child pages. Pages are never overwritten. A change writes new copies of the pages
+// it touched (and the branches above them) on to the end of the file, and then a header pointing at the
+// new root, so a crash at any point still leaves the last header pointing at a complete tree.
+// There are two header pages, used in turn, each with a checksum, so a torn header is simply ignored.
+// Old pages pile up at the end of the file, so once most of the file is old pages, it is rewritten.
+// A value too long to fit on a leaf with its key (e.g. a record with a long note) goes on overflow pages of its
+// own instead, and the leaf just points at them. These are written once, along with the leaf, and never change.
+// Nodes are kept in memory once read, up to MAX_NODES of them, after which all but the root are dropped
+// and read again as they are needed. Values on overflow pages are read along with their leaf.
+//
+// File layout: page 0 and page 1 are headers, every page after that is a node of the tree or an overflow page.
+// Header: magic, version, generation, root page, page count, live page count, checksum.
+// Leaf page: type, count, then (key length, key, value length, value) for each entry.
+// An entry whose value is on overflow pages has OVERFLOW instead of the value length, then its first page and length.
+// Branch page: type, count, first child page, then (key length, key, child page) for each key.
+// Overflow page: type, next overflow page (or 0 for the last), length, then that much of the value.
+public class PageStore {
+    // The size of every page in the file.
+    private static final int PAGE = 4096;
+    // Every valid header starts with "BTPS" (Baby Tracker Page Store), then the version of the layout.
+    private static final int MAGIC = 0x42545053;
+    // Version 2 added overflow pages. Files from version 1 are the same apart from that, so they are read as they are.
+    private static final int VERSION = 2;
+    private static final int OLD_VERSION = 1;
+    // The largest a single key plus its value can be on a leaf, so that a page can always hold at least two entries.
+    // Longer values go on overflow pages, so it is only the key that must fit.
+    public static final int MAX_ENTRY = 1300;
+    public static final int MAX_KEY = 1024;
+    // The value length that marks an entry as being on overflow pages, and how much of a leaf it takes up instead.
+    private static final int OVERFLOW = 0xFFFF;
+    private static final int OVERFLOW_SIZE = 12;
+    // How much of a value fits on each overflow page, after the type, next page and length.
+    private static final int OVERFLOW_DATA = PAGE - 11;
+    // The most nodes to keep in memory once they have been read (about 4MB of pages), besides the root.
+    private static final int MAX_NODES = 1024;
+    // Page types.
+    private static final byte LEAF = 1;
+    private static final byte BRANCH = 2;
+    private static final byte OVERFLOW_PAGE = 3;
+    // Once there are this many times more pages in the file than are in use (and a few to spare), it is rewritten.
+    private static final int VACUUM_RATIO = 3;
+    private static final int VACUUM_SLACK = 256;
+
+    // The file itself, and the channel it is read and written through.
+    private File file;
+    private FileChannel channel;
+    // The root of the tree. Nodes below it are read from the file as they are needed.
+    private Node root;
+    // The number of pages in the file (including the headers), and how many of those the tree is using.
+    private long pagecount;
+    private long livepages;
+    // Counts up with every header written, so the newest one can be told apart from the older one.
+    private long generation;
+    // How many nodes have been read from the file since they were last dropped (see MAX_NODES).
+    private int loadednodes;
+
+    // A node of the tree, as read from its page (or not yet written to one).
+    private static class Node {
+        // The page it was read from or last written to, or 0 if it hasn't been written yet.
+        private long page;
+        private boolean leaf;
+        // Whether it has changed since it was read or written, and needs writing to a new page.
+        private boolean dirty;
+        private ArrayList<byte[]> keys = new ArrayList<>();
+        // For leaves, the value of each key, and the first overflow page of each value on overflow pages.
+        // The overflow page is 0 for values on the leaf itself, and for values that haven't been written yet.
+        private ArrayList<byte[]> values = new ArrayList<>();
+        private ArrayList<Long> overflowpages = new ArrayList<>();
+        // For branches, the page of each child, and the child itself once it has been read.
+        // There is always one more child than there are keys.
+        private ArrayList<Long> childpages = new ArrayList<>();
+        private ArrayList<Node> childnodes = new ArrayList<>();
+    }
+
+    // A set of changes, which are applied all together or not at all.
+    public static class Batch {
+        // Each change is {key, value} for a put, {key, null} for a delete, or {from, to, range} for a range delete.
+        private ArrayList<Object[]> changes = new ArrayList<>();
+
+        public void put(byte[] key, byte[] value) {
+            if (key.length > MAX_KEY) {
+                throw new IllegalArgumentException("Key of " + key.length + " bytes is too large to store (the limit is " + MAX_KEY + ").");
+            }
+            this.changes.add(new Object[]{key, value});
+        }
+        public void delete(byte[] key) {
+            this.changes.add(new Object[]{key, null});
+        }
+        // Delete every key from (inclusive) up to (exclusive).
+        public void deleteRange(byte[] from, byte[] to) {
+            this.changes.add(new Object[]{from, to, Boolean.TRUE});
+        }
+        public boolean isEmpty() {
+            return this.changes.isEmpty();
+        }
+    }
+
+    public PageStore(File file) {
+        this.file = file;
+        try {
+            file.getAbsoluteFile().getParentFile().mkdirs();
+            // A rewrite that didn't finish leaves this behind. The real file is still untouched, so throw it away.
+            new File(file.getPath() + ".tmp").delete();
+            this.open();
+        } catch (IOException e) {
+            throw new RuntimeException("Unable to open the store file " + file.getName() + ".", e);
+        }
+    }
+
+    // Get the value of a key, or null if there isn't one.
+    public synchronized byte[] get(byte[] key) {
+        try {
+            Node node = this.root;
+            while (!node.leaf) {
+                node = this.child(node, upperBound(node.keys, key));
+            }
+            int i = lowerBound(node.keys, key);
+            byte[] value = null;
+            if (i < node.keys.size() && compare(node.keys.get(i), key) == 0) {
+                value = node.values.get(i);
+            }
+            this.trim();
+            return value;
+        } catch (IOException e) {
+            throw new RuntimeException("Unable to read from the store file " + this.file.getName() + ".", e);
+        }
+    }
+
+    // Get every key from (inclusive) up to (exclusive), in order, as {key, value} pairs.
+    public synchronized ArrayList<byte[][]> scan(byte[] from, byte[] to) {
+        ArrayList<byte[][]> entries = new ArrayList<>();
+        try {
+            this.scan(this.root, from, to, entries);
+            this.trim();
+        } catch (IOException e) {
+            throw new RuntimeException("Unable to read from the store file " + this.file.getName() + ".", e);
+        }
+        return entries;
+    }
+
+    // Apply a batch of changes, and write them to the file before returning.
+    // If anything goes wrong, none of the changes are kept, either in the file or in memory.
+    public synchronized void apply(Batch batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        try {
+            for (Object[] change : batch.changes) {
+                if (change.length == 3) {
+                    // Find the keys first, since deleting them while scanning would skip some.
+                    for (byte[][] entry : this.scan(this.root, (byte[]) change[0], (byte[]) change[1], new ArrayList<>())) {
+                        this.delete(this.root, entry[0]);
+                    }
+                } else if (change[1] == null) {
+                    this.delete(this.root, (byte[]) change[0]);
+                } else {
+                    this.put((byte[]) change[0], (byte[]) change[1]);
+                }
+            }
+            this.commit();
+            // Rewrite the file once it is mostly old pages.
+            if (this.pagecount - 2 > VACUUM_RATIO * this.livepages + VACUUM_SLACK) {
+                this.vacuum();
+            }
+            this.trim();
+        } catch (IOException | RuntimeException e) {
+            // Forget everything that was changed in memory, and go back to what is in the file.
+            try {
+                this.channel.close();
+                this.open();
+            } catch (IOException e2) {
+                e.addSuppressed(e2);
+            }
+            throw new RuntimeException("Unable to write to the store file " + this.file.getName() + ".", e);
+        }
+    }
+
+    // The size of the file, and how much of it the tree is actually using, in bytes.
+    public synchronized long getFileSize() {
+        return this.pagecount * PAGE;
+    }
+    public synchronized long getLiveSize() {
+        return (this.livepages + 2) * PAGE;
+    }
+
+    // Close the file. The store can't be used after this.
+    public synchronized void close() {
+        try {
+            this.channel.close();
+        } catch (IOException e) {
+            throw new RuntimeException("Unable to close the store file " + this.file.getName() + ".", e);
+        }
+    }
+
+    // Helper method to open the file, and find the root of the tree from the newest valid header.
+    private void open() throws IOException {
+        this.channel = FileChannel.open(this.file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        this.loadednodes = 0;
+        ByteBuffer best = null;
+        for (int slot = 0; slot < 2; slot++) {
+            ByteBuffer header = this.readHeader(slot);
+            if (header != null && (best == null || header.getLong(8) > best.getLong(8))) {
+                best = header;
+            }
+        }
+        if (best == null) {
+            // Refuse to start over on top of something that isn't a store, rather than destroying it.
+            if (this.channel.size() > 2 * PAGE) {
+                this.channel.close();
+                throw new IOException("The store file " + this.file.getName() + " is damaged: neither header is valid.");
+            }
+            // A brand new store, with just an empty leaf.
+            this.generation = 0;
+            this.pagecount = 2;
+            this.livepages = 0;
+            this.root = new Node();
+            this.root.leaf = true;
+            this.root.dirty = true;
+            this.commit();
+            return;
+        }
+        this.generation = best.getLong(8);
+        long rootpage = best.getLong(16);
+        this.pagecount = best.getLong(24);
+        this.livepages = best.getLong(32);
+        // Anything after the last page the header knows about is from a change that a crash interrupted.
+        if (this.channel.size() > this.pagecount * PAGE) {
+            this.channel.truncate(this.pagecount * PAGE);
+        }
+        this.root = this.readNode(rootpage);
+    }
+
+    // Helper method to read one of the two headers, returning null if it isn't valid.
+    private ByteBuffer readHeader(int slot) throws IOException {
+        if (this.channel.size() < (slot + 1) * (long) PAGE) {
+            return null;
+        }
+        ByteBuffer header = ByteBuffer.allocate(44);
+        this.channel.read(header, slot * (long) PAGE);
+        if (header.getInt(0) != MAGIC || (header.getInt(4) != VERSION && header.getInt(4) != OLD_VERSION)) {
+            return null;
+        }
+        CRC32 crc = new CRC32();
+        crc.update(header.array(), 0, 40);
+        if ((int) crc.getValue() != header.getInt(40)) {
+            return null;
+        }
+        return header;
+    }
+
+    // Helper method to write every changed node to new pages, and then a header pointing at the new root.
+    private void commit() throws IOException {
+        long rootpage = this.writeNode(this.root);
+        // Every page must be on the disk before the header that points at them, whatever the durability policy.
+        // The header is written in place, so if it got there first, a power cut would leave it pointing at garbage.
+        this.channel.force(true);
+        this.generation++;
+        ByteBuffer header = ByteBuffer.allocate(44);
+        header.putInt(0, MAGIC);
+        header.putInt(4, VERSION);
+        header.putLong(8, this.generation);
+        header.putLong(16, rootpage);
+        header.putLong(24, this.pagecount);
+        header.putLong(32, this.livepages);
+        CRC32 crc = new CRC32();
+        crc.update(header.array(), 0, 40);
+        header.putInt(40, (int) crc.getValue());
+        // Use the headers in turn, so the previous one is still there if this one is torn.
+        this.channel.write(header, (this.generation % 2) * PAGE);
+        DurableWriter.commit(List.of(this.file));
+    }
+
+    // Helper method to write a node (after any of its changed children) to a new page, returning the page.
+    private long writeNode(Node node) throws IOException {
+        if (!node.dirty) {
+            return node.page;
+        }
+        if (!node.leaf) {
+            for (int i = 0; i < node.childnodes.size(); i++) {
+                Node child = node.childnodes.get(i);
+                if (child != null && child.dirty) {
+                    node.childpages.set(i, this.writeNode(child));
+                }
+            }
+        }
+        // The page it was on before is not part of the tree any more.
+        if (node.page != 0) {
+            this.livepages--;
+        }
+        node.page = this.pagecount++;
+        this.livepages++;
+        ByteBuffer page = ByteBuffer.allocate(PAGE);
+        page.put(node.leaf ? LEAF : BRANCH);
+        page.putShort((short) node.keys.size());
+        if (node.leaf) {
+            for (int i = 0; i < node.keys.size(); i++) {
+                byte[] value = node.values.get(i);
+                page.putShort((short) node.keys.get(i).length);
+                page.put(node.keys.get(i));
+                if (isOverflow(node.keys.get(i), value)) {
+                    // Values already on overflow pages stay there, so only new ones are written.
+                    if (node.overflowpages.get(i) == 0) {
+                        node.overflowpages.set(i, this.writeOverflow(value));
+                    }
+                    page.putShort((short) OVERFLOW);
+                    page.putLong(node.overflowpages.get(i));
+                    page.putInt(value.length);
+                } else {
+                    page.putShort((short) value.length);
+                    page.put(value);
+                }
+            }
+        } else {
+            page.putLong(node.childpages.get(0));
+            for (int i = 0; i < node.keys.size(); i++) {
+                page.putShort((short) node.keys.get(i).length);
+                page.put(node.keys.get(i));
+                page.putLong(node.childpages.get(i + 1));
+            }
+        }
+        // Always write the whole page, so the file stays a whole number of pages long.
+        page.clear();
+        this.channel.write(page, node.page * PAGE);
+        node.dirty = false;
+        return node.page;
+    }
+
+    // Helper method to read a node from its page.
+    private Node readNode(long pagenumber) throws IOException {
+        ByteBuffer page = ByteBuffer.allocate(PAGE);
+        this.channel.read(page, pagenumber * PAGE);
+        page.flip();
+        Node node = new Node();
+        node.page = pagenumber;
+        byte type = page.get();
+        if (type != LEAF && type != BRANCH) {
+            throw new IOException("The store file " + this.file.getName() + " is damaged: page " + pagenumber + " is not a node.");
+        }
+        node.leaf = type == LEAF;
+        int count = page.getShort() & 0xFFFF;
+        if (node.leaf) {
+            for (int i = 0; i < count; i++) {
+                node.keys.add(readBytes(page));
+                int length = page.getShort() & 0xFFFF;
+                if (length == OVERFLOW) {
+                    long overflowpage = page.getLong();
+                    node.values.add(this.readOverflow(overflowpage, page.getInt()));
+                    node.overflowpages.add(overflowpage);
+                } else {
+                    byte[] value = new byte[length];
+                    page.get(value);
+                    node.values.add(value);
+                    node.overflowpages.add(0L);
+                }
+            }
+        } else {
+            node.childpages.add(page.getLong());
+            node.childnodes.add(null);
+            for (int i = 0; i < count; i++) {
+                node.keys.add(readBytes(page));
+                node.childpages.add(page.getLong());
+                node.childnodes.add(null);
+            }
+        }
+        return node;
+    }
+
+    // Helper method to get a child of a branch, reading it from its page the first time.
+    private Node child(Node node, int i) throws IOException {
+        Node child = node.childnodes.get(i);
+        if (child == null) {
+            child = this.readNode(node.childpages.get(i));
+            node.childnodes.set(i, child);
+            this.loadednodes++;
+        }
+        return child;
+    }
+
+    // Helper method to drop every node read into memory apart from the root, once there are too many of them.
+    // Only called once every change has been written, so none of them are dirty, and they can all be read again.
+    private void trim() {
+        if (this.loadednodes <= MAX_NODES || this.root.leaf) {
+            return;
+        }
+        for (int i = 0; i < this.root.childnodes.size(); i++) {
+            this.root.childnodes.set(i, null);
+        }
+        this.loadednodes = 0;
+    }
+
+    // Helper method to write a value on to new overflow pages, returning the first page.
+    // The pages are written last to first, so each one knows the page that comes after it.
+    private long writeOverflow(byte[] value) throws IOException {
+        long next = 0;
+        int end = value.length;
+        while (end > 0) {
+            // Every page but the last is full, so the last one starts at a whole number of pages in.
+            int start = (end - 1) / OVERFLOW_DATA * OVERFLOW_DATA;
+            ByteBuffer page = ByteBuffer.allocate(PAGE);
+            page.put(OVERFLOW_PAGE);
+            page.putLong(next);
+            page.putShort((short) (end - start));
+            page.put(value, start, end - start);
+            page.clear();
+            next = this.pagecount++;
+            this.livepages++;
+            this.channel.write(page, next * PAGE);
+            end = start;
+        }
+        return next;
+    }
+
+    // Helper method to read a value of the given length from the overflow pages starting at the given page.
+    private byte[] readOverflow(long pagenumber, int length) throws IOException {
+        byte[] value = new byte[length];
+        int done = 0;
+        while (done < length) {
+            ByteBuffer page = ByteBuffer.allocate(PAGE);
+            this.channel.read(page, pagenumber * PAGE);
+            page.flip();
+            if (pagenumber == 0 || page.get() != OVERFLOW_PAGE) {
+                throw new IOException("The store file " + this.file.getName() + " is damaged: page " + pagenumber + " is not an overflow page.");
+            }
+            pagenumber = page.getLong();
+            int count = page.getShort() & 0xFFFF;
+            page.get(value, done, count);
+            done += count;
+        }
+        return value;
+    }
+
+    // Helper method to note that a value's overflow pages (if it has any) are not part of the tree any more.
+    private void release(Node node, int i) {
+        if (node.overflowpages.get(i) != 0) {
+            this.livepages -= (node.values.get(i).length + OVERFLOW_DATA - 1) / OVERFLOW_DATA;
+        }
+    }
+
+    // Helper method to add or replace a key, splitting the root if it gets too big.
+    private void put(byte[] key, byte[] value) throws IOException {
+        Object[] split = this.insert(this.root, key, value);
+        if (split != null) {
+            // The tree gets a level taller, with a new root above the two halves.
+            Node newroot = new Node();
+            newroot.dirty = true;
+            newroot.keys.add((byte[]) split[0]);
+            newroot.childpages.add(this.root.page);
+            newroot.childnodes.add(this.root);
+            newroot.childpages.add(0L);
+            newroot.childnodes.add((Node) split[1]);
+            this.root = newroot;
+        }
+    }
+
+    // Helper method to add or replace a key below a node.
+    // If the node gets too big for its page, it is split, and {separator key, new right half} is returned.
+    private Object[] insert(Node node, byte[] key, byte[] value) throws IOException {
+        node.dirty = true;
+        // Whether the key went on the very end of the node, which is how lists of records get written.
+        boolean atend;
+        if (node.leaf) {
+            int i = lowerBound(node.keys, key);
+            if (i < node.keys.size() && compare(node.keys.get(i), key) == 0) {
+                this.release(node, i);
+                node.values.set(i, value);
+                node.overflowpages.set(i, 0L);
+            } else {
+                node.keys.add(i, key);
+                node.values.add(i, value);
+                node.overflowpages.add(i, 0L);
+            }
+            atend = i == node.keys.size() - 1;
+        } else {
+            int i = upperBound(node.keys, key);
+            Object[] split = this.insert(this.child(node, i), key, value);
+            if (split != null) {
+                node.keys.add(i, (byte[]) split[0]);
+                node.childpages.add(i + 1, 0L);
+                node.childnodes.add(i + 1, (Node) split[1]);
+            }
+            atend = i == node.keys.size() - 1;
+        }
+        if (size(node) > PAGE) {
+            return split(node, atend);
+        }
+        return null;
+    }
+
+    // Helper method to remove a key below a node, returning whether it was there.
+    // Nodes are allowed to get small rather than being merged, but leaves that end up empty are removed,
+    // since the journal keeps emptying out its oldest leaves and they would otherwise pile up.
+    private boolean delete(Node node, byte[] key) throws IOException {
+        if (node.leaf) {
+            int i = lowerBound(node.keys, key);
+            if (i < node.keys.size() && compare(node.keys.get(i), key) == 0) {
+                this.release(node, i);
+                node.keys.remove(i);
+                node.values.remove(i);
+                node.overflowpages.remove(i);
+                node.dirty = true;
+                return true;
+            }
+            return false;
+        }
+        int i = upperBound(node.keys, key);
+        Node child = this.child(node, i);
+        if (!this.delete(child, key)) {
+            return false;
+        }
+        node.dirty = true;
+        if (child.leaf && child.keys.isEmpty() && node.childpages.size() > 1) {
+            // Remove the child along with a key next to it (the one before it, unless it is the first child).
+            node.keys.remove(i > 0 ? i - 1 : 0);
+            node.childpages.remove(i);
+            node.childnodes.remove(i);
+            // Its page is not part of the tree any more.
+            if (child.page != 0) {
+                this.livepages--;
+            }
+        }
+        return true;
+    }
+
+    // Helper method to collect the entries from (inclusive) up to (exclusive) below a node.
+    private ArrayList<byte[][]> scan(Node node, byte[] from, byte[] to, ArrayList<byte[][]> entries) throws IOException {
+        if (node.leaf) {
+            for (int i = lowerBound(node.keys, from); i < node.keys.size() && compare(node.keys.get(i), to) < 0; i++) {
+                entries.add(new byte[][]{node.keys.get(i), node.values.get(i)});
+            }
+            return entries;
+        }
+        // Start at the child that from would be in, and stop once the children start at or after to.
+        for (int i = upperBound(node.keys, from); i < node.childpages.size(); i++) {
+            if (i > 0 && compare(node.keys.get(i - 1), to) >= 0) {
+                break;
+            }
+            this.scan(this.child(node, i), from, to, entries);
+        }
+        return entries;
+    }
+
+    // Helper method to rewrite the whole tree into a new file, leaving out every old page.
+    // The new file is only moved into place once it is complete, so a crash just leaves the old one.
+    private void vacuum() throws IOException {
+        // Read every node, and mark it as needing a new page.
+        this.loadAll(this.root);
+        File tmpfile = new File(this.file.getPath() + ".tmp");
+        FileChannel oldchannel = this.channel;
+        this.channel = FileChannel.open(tmpfile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        this.pagecount = 2;
+        this.livepages = 0;
+        File written = this.file;
+        this.file = tmpfile;
+        try {
+            this.commit();
+        } catch (IOException e) {
+            // Go back to the old file, which apply() then reopens.
+            this.channel.close();
+            this.channel = oldchannel;
+            this.file = written;
+            throw e;
+        }
+        this.file = written;
+        // The new file must be on the disk before it replaces the old one, whatever the durability policy.
+        this.channel.force(true);
+        this.channel.close();
+        oldchannel.close();
+        DurableWriter.move(tmpfile, this.file);
+        DurableWriter.commit(List.of(this.file.getAbsoluteFile().getParentFile()));
+        // Carry on using the new file. This also drops the nodes read into memory, since they're all read again on demand.
+        this.open();
+    }
+
+    // Helper method to read every node below (and including) a node, and mark them as needing a new page.
+    private void loadAll(Node node) throws IOException {
+        node.dirty = true;
+        node.page = 0;
+        if (node.leaf) {
+            // Values on overflow pages need copying into the new file too.
+            for (int i = 0; i < node.overflowpages.size(); i++) {
+                node.overflowpages.set(i, 0L);
+            }
+            return;
+        }
+        for (int i = 0; i < node.childpages.size(); i++) {
+            this.loadAll(this.child(node, i));
+        }
+    }
+
+    // Helper method to work out how many bytes a node takes up on its page.
+    private static int size(Node node) {
+        int size = 3;
+        if (node.leaf) {
+            for (int i = 0; i < node.keys.size(); i++) {
+                size += 4 + node.keys.get(i).length + storedSize(node.keys.get(i), node.values.get(i));
+            }
+        } else {
+            size += 8;
+            for (byte[] key : node.keys) {
+                size += 10 + key.length;
+            }
+        }
+        return size;
+    }
+
+    // Helper method to split a node in half (by size), returning {separator key, new right half}.
+    // If keys are being added on the end, the left half is left full instead, since nothing else will go in it.
+    // Otherwise writing keys in order would leave every page half empty.
+    private static Object[] split(Node node, boolean atend) {
+        int mid;
+        if (atend) {
+            // Only the last key moves to the right half (or up, for a branch).
+            mid = node.keys.size() - 1;
+        } else {
+            // Find where half the bytes are.
+            int half = size(node) / 2;
+            mid = 0;
+            int size = 3;
+            while (mid < node.keys.size() - 1 && size < half) {
+                size += node.leaf ? 4 + node.keys.get(mid).length + storedSize(node.keys.get(mid), node.values.get(mid)) : 10 + node.keys.get(mid).length;
+                mid++;
+            }
+            mid = Math.max(mid, 1);
+        }
+        Node right = new Node();
+        right.leaf = node.leaf;
+        right.dirty = true;
+        byte[] separator;
+        if (node.leaf) {
+            // The right half keeps every entry from mid onwards, and the first of those separates the halves.
+            right.keys.addAll(node.keys.subList(mid, node.keys.size()));
+            right.values.addAll(node.values.subList(mid, node.values.size()));
+            right.overflowpages.addAll(node.overflowpages.subList(mid, node.overflowpages.size()));
+            node.keys.subList(mid, node.keys.size()).clear();
+            node.values.subList(mid, node.values.size()).clear();
+            node.overflowpages.subList(mid, node.overflowpages.size()).clear();
+            separator = right.keys.get(0);
+        } else {
+            // The key at mid moves up to separate the halves, so neither half keeps it.
+            separator = node.keys.get(mid);
+            right.keys.addAll(node.keys.subList(mid + 1, node.keys.size()));
+            right.childpages.addAll(node.childpages.subList(mid + 1, node.childpages.size()));
+            right.childnodes.addAll(node.childnodes.subList(mid + 1, node.childnodes.size()));
+            node.keys.subList(mid, node.keys.size()).clear();
+            node.childpages.subList(mid + 1, node.childpages.size()).clear();
+            node.childnodes.subList(mid + 1, node.childnodes.size()).clear();
+        }
+        return new Object[]{separator, right};
+    }
+
+    // Helper methods to tell whether a value goes on overflow pages, and how much of its leaf it takes up.
+    private static boolean isOverflow(byte[] key, byte[] value) {
+        return key.length + value.length > MAX_ENTRY;
+    }
+    private static int storedSize(byte[] key, byte[] value) {
+        return isOverflow(key, value) ? OVERFLOW_SIZE : value.length;
+    }
+
+    // Helper method to read a length and then that many bytes from a page.
+    private static byte[] readBytes(ByteBuffer page) {
+        byte[] bytes = new byte[page.getShort() & 0xFFFF];
+        page.get(bytes);
+        return bytes;
+    }
+
+    // Helper method to find the first key that is at or after the given key.
+    private static int lowerBound(ArrayList<byte[]> keys, byte[] key) {
+        int low = 0;
+        int high = keys.size();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (compare(keys.get(mid), key) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    // Helper method to find the first key that is after the given key, which in a branch is the child the key is in.
+    private static int upperBound(ArrayList<byte[]> keys, byte[] key) {
+        int low = 0;
+        int high = keys.size();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (compare(keys.get(mid), key) <= 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    // Compare two keys byte by byte (as unsigned), with a shorter key coming before any longer key it starts.
+    public static int compare(byte[] a, byte[] b) {
+        int length = Math.min(a.length, b.length);
+        for (int i = 0; i < length; i++) {
+            int diff = (a[i] & 0xFF) - (b[i] & 0xFF);
+            if (diff != 0) {
+                return diff;
+            }
+        }
+        return a.length - b.length;
+    }
+}
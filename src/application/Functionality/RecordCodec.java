@@ -0,0 +1,311 @@
+package application.Functionality;
+
+// Modules for reporting a record file that has been cut short.
+import java.io.IOException;
+import java.util.Arrays;
+
+// This class compresses the columns of a record file (see RecordFile), in the style of the Gorilla time series format.
+// Records are logged a few minutes or hours apart, and amounts repeat a lot, so most of each record can be
+// worked out from the one before it. Each column is written as a stream of bits:
+// - Times are written as the change in the gap between them (delta-of-delta), which is usually zero or small.
+//   They are first divided by the largest unit every time is a multiple of, e.g. 60 for times on the minute.
+// - Numbers are XORed with the one before. The same number again is a single bit, and a similar one only needs
+//   the bits that changed, reusing the position of the changed bits from the number before where possible.
+// - Dictionary codes (e.g. the feeding type) are run-length encoded, so a run of the same type is one entry.
+// Like AppStorage, it only contains static methods, so objects must not be created.
+public class RecordCodec {
+    // Make the constructor private and empty so objects cannot be created.
+    private RecordCodec() {}
+
+    // Methods to write and read a column of times, in seconds.
+    public static void writeTimes(BitWriter out, long[] times) {
+        if (times.length == 0) {
+            return;
+        }
+        // Find the largest unit every time is a whole number of, counting from the first.
+        long unit = 0;
+        for (long time : times) {
+            unit = gcd(unit, Math.abs(time - times[0]));
+        }
+        if (unit == 0) {
+            unit = 1;
+        }
+        out.writeVar(unit);
+        out.write(times[0], 64);
+        long delta = 0;
+        for (int i = 1; i < times.length; i++) {
+            long next = (times[i] - times[i - 1]) / unit;
+            long change = next - delta;
+            delta = next;
+            // A prefix saying how many bits the change needs, then the change itself.
+            if (change == 0) {
+                out.write(0, 1);
+            } else if (fits(change, 7)) {
+                out.write(0b10, 2);
+                out.write(change, 7);
+            } else if (fits(change, 12)) {
+                out.write(0b110, 3);
+                out.write(change, 12);
+            } else if (fits(change, 20)) {
+                out.write(0b1110, 4);
+                out.write(change, 20);
+            } else if (fits(change, 32)) {
+                out.write(0b11110, 5);
+                out.write(change, 32);
+            } else {
+                out.write(0b11111, 5);
+                out.write(change, 64);
+            }
+        }
+    }
+    public static long[] readTimes(BitReader in, int count) throws IOException {
+        long[] times = new long[count];
+        if (count == 0) {
+            return times;
+        }
+        long unit = in.readVar();
+        times[0] = in.read(64);
+        long delta = 0;
+        for (int i = 1; i < count; i++) {
+            long change;
+            if (!in.readBit()) {
+                change = 0;
+            } else if (!in.readBit()) {
+                change = in.readSigned(7);
+            } else if (!in.readBit()) {
+                change = in.readSigned(12);
+            } else if (!in.readBit()) {
+                change = in.readSigned(20);
+            } else if (!in.readBit()) {
+                change = in.readSigned(32);
+            } else {
+                change = in.read(64);
+            }
+            delta += change;
+            times[i] = times[i - 1] + delta * unit;
+        }
+        return times;
+    }
+
+    // Methods to write and read a column of numbers.
+    public static void writeDoubles(BitWriter out, double[] values) {
+        if (values.length == 0) {
+            return;
+        }
+        long previous = Double.doubleToRawLongBits(values[0]);
+        out.write(previous, 64);
+        // The position of the changed bits last time a full position was written, or -1 if there hasn't been one.
+        int leading = -1;
+        int trailing = 0;
+        for (int i = 1; i < values.length; i++) {
+            long bits = Double.doubleToRawLongBits(values[i]);
+            long xor = bits ^ previous;
+            previous = bits;
+            if (xor == 0) {
+                // The same number again.
+                out.write(0, 1);
+                continue;
+            }
+            out.write(1, 1);
+            // The count of leading zeros has to fit in 5 bits.
+            int newleading = Math.min(Long.numberOfLeadingZeros(xor), 31);
+            int newtrailing = Long.numberOfTrailingZeros(xor);
+            if (leading >= 0 && newleading >= leading && newtrailing >= trailing) {
+                // The changed bits fit in the same position as before, so only they are needed.
+                out.write(0, 1);
+                out.write(xor >>> trailing, 64 - leading - trailing);
+            } else {
+                // Otherwise write the new position first. A length of 64 is written as 0, to fit in 6 bits.
+                int length = 64 - newleading - newtrailing;
+                out.write(1, 1);
+                out.write(newleading, 5);
+                out.write(length & 63, 6);
+                out.write(xor >>> newtrailing, length);
+                leading = newleading;
+                trailing = newtrailing;
+            }
+        }
+    }
+    public static double[] readDoubles(BitReader in, int count) throws IOException {
+        double[] values = new double[count];
+        if (count == 0) {
+            return values;
+        }
+        long previous = in.read(64);
+        values[0] = Double.longBitsToDouble(previous);
+        int leading = 0;
+        int trailing = 0;
+        for (int i = 1; i < count; i++) {
+            if (in.readBit()) {
+                if (in.readBit()) {
+                    leading = (int) in.read(5);
+                    int length = (int) in.read(6);
+                    if (length == 0) {
+                        length = 64;
+                    }
+                    trailing = 64 - leading - length;
+                }
+                previous ^= in.read(64 - leading - trailing) << trailing;
+            }
+            values[i] = Double.longBitsToDouble(previous);
+        }
+        return values;
+    }
+
+    // Methods to write and read a column of dictionary codes, as runs of the same code.
+    // Each code is written in just enough bits for the size of the dictionary.
+    public static void writeCodes(BitWriter out, int[] codes, int dictionarysize) {
+        int width = width(dictionarysize);
+        int i = 0;
+        while (i < codes.length) {
+            int run = 1;
+            while (i + run < codes.length && codes[i + run] == codes[i]) {
+                run++;
+            }
+            out.write(codes[i], width);
+            out.writeVar(run);
+            i += run;
+        }
+    }
+    public static int[] readCodes(BitReader in, int count, int dictionarysize) throws IOException {
+        int width = width(dictionarysize);
+        int[] codes = new int[count];
+        int i = 0;
+        while (i < count) {
+            int code = (int) in.read(width);
+            long run = in.readVar();
+            if (code >= dictionarysize || run < 1 || run > count - i) {
+                throw new IOException("Bad run of dictionary codes in the record file.");
+            }
+            Arrays.fill(codes, i, i + (int) run, code);
+            i += (int) run;
+        }
+        return codes;
+    }
+
+    // Helper method to check whether a number fits in the given number of bits, as a signed number.
+    private static boolean fits(long value, int bits) {
+        long limit = 1L << (bits - 1);
+        return value >= -limit && value < limit;
+    }
+
+    // Helper method to get the number of bits needed for the codes of a dictionary of the given size.
+    private static int width(int dictionarysize) {
+        return dictionarysize <= 1 ? 0 : 32 - Integer.numberOfLeadingZeros(dictionarysize - 1);
+    }
+
+    // Helper method to get the greatest common divisor of two numbers, which are never negative here.
+    private static long gcd(long a, long b) {
+        while (b != 0) {
+            long next = a % b;
+            a = b;
+            b = next;
+        }
+        return a;
+    }
+
+    // Writes a stream of bits into a byte array, most significant bit first.
+    public static class BitWriter {
+        private byte[] bytes = new byte[256];
+        private int length = 0;
+        // Bits waiting to be written, which never fill a whole byte.
+        private int current = 0;
+        private int bits = 0;
+
+        // Write the lowest count bits of a value (0 to 64 of them).
+        public void write(long value, int count) {
+            while (count > 0) {
+                int take = Math.min(8 - this.bits, count);
+                int chunk = (int) (value >>> (count - take)) & ((1 << take) - 1);
+                this.current = (this.current << take) | chunk;
+                this.bits += take;
+                count -= take;
+                if (this.bits == 8) {
+                    this.append((byte) this.current);
+                    this.current = 0;
+                    this.bits = 0;
+                }
+            }
+        }
+
+        // Write a number that is never negative, 7 bits at a time, each with a bit saying whether more follow.
+        public void writeVar(long value) {
+            while ((value & ~0x7FL) != 0) {
+                this.write(0x80 | (value & 0x7F), 8);
+                value >>>= 7;
+            }
+            this.write(value, 8);
+        }
+
+        // Get everything written so far, with the last byte filled out with zeros.
+        public byte[] toByteArray() {
+            byte[] result = Arrays.copyOf(this.bytes, this.length + (this.bits > 0 ? 1 : 0));
+            if (this.bits > 0) {
+                result[this.length] = (byte) (this.current << (8 - this.bits));
+            }
+            return result;
+        }
+
+        private void append(byte value) {
+            if (this.length == this.bytes.length) {
+                this.bytes = Arrays.copyOf(this.bytes, this.bytes.length * 2);
+            }
+            this.bytes[this.length++] = value;
+        }
+    }
+
+    // Reads back a stream of bits written by BitWriter.
+    public static class BitReader {
+        private byte[] bytes;
+        private int position = 0;
+        // How many bits of the byte at the position have been read.
+        private int bit = 0;
+
+        public BitReader(byte[] bytes) {
+            this.bytes = bytes;
+        }
+
+        // Read count bits (0 to 64 of them) as a number.
+        public long read(int count) throws IOException {
+            long value = 0;
+            while (count > 0) {
+                if (this.position >= this.bytes.length) {
+                    throw new IOException("The record file ends too early.");
+                }
+                int available = 8 - this.bit;
+                int take = Math.min(available, count);
+                int chunk = ((this.bytes[this.position] & 0xFF) >>> (available - take)) & ((1 << take) - 1);
+                value = (value << take) | chunk;
+                this.bit += take;
+                count -= take;
+                if (this.bit == 8) {
+                    this.position++;
+                    this.bit = 0;
+                }
+            }
+            return value;
+        }
+
+        public boolean readBit() throws IOException {
+            return this.read(1) != 0;
+        }
+
+        // Read count bits as a signed number, as written by BitWriter.write with a negative value.
+        public long readSigned(int count) throws IOException {
+            return (this.read(count) << (64 - count)) >> (64 - count);
+        }
+
+        // Read a number written by BitWriter.writeVar.
+        public long readVar() throws IOException {
+            long value = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                long group = this.read(8);
+                value |= (group & 0x7F) << shift;
+                if ((group & 0x80) == 0) {
+                    return value;
+                }
+            }
+            throw new IOException("Bad number in the record file.");
+        }
+    }
+}
@@ -0,0 +1,728 @@
+package application.Functionality;
+
+import application.*;
+
+// Modules for the list interface this provides, and converting times.
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.ConcurrentModificationException;
+import java.util.List;
+import java.util.RandomAccess;
+import java.util.concurrent.atomic.AtomicLong;
+
+// This class is a list of records of one type, which keeps them as columns of plain numbers rather than objects.
+// A FeedingRecord object with its LocalDateTime (and the LocalDate and LocalTime inside that) takes over
+// a hundred bytes, whereas here a feeding is just a long (the time, in seconds since 1970), an int (the code
+// of its type in a RecordDictionary) and a double (the amount), which is 20 bytes.
+// The columns grow a chunk at a time, so adding records never has to copy the ones already there.
+//
+// It is still a List of records, so Child can hand it out from its getters as before. Each record is
+// made on the fly when it is asked for, which is cheap since they are never changed once created.
+// Times only keep whole seconds, the same as the record files (see RecordFile).
+//
+// The list stays in the order records were added, since screens rely on that (see ChildProfile), but records
+// can be logged after the fact, so that isn't always the order they happened in. An index of the records in
+// order of time is kept alongside, so the records between two times, or the latest few, can be found with a
+// binary search rather than going through all of them (see between and last).
+public class RecordColumns<T> extends AbstractList<T> implements RandomAccess {
+    // How many records go in each chunk of a column. This must be a power of 2.
+    private static final int CHUNK_SHIFT = 10;
+    private static final int CHUNK = 1 << CHUNK_SHIFT;
+
+    // How each type of record is split into columns: how many time columns, whether it has a string
+    // (kept as a dictionary code), and how many number columns, along with how to get them out of
+    // a record and put them back together again.
+    public static abstract class Layout<T> {
+        private final int timecount;
+        private final boolean hascode;
+        private final int numbercount;
+
+        private Layout(int timecount, boolean hascode, int numbercount) {
+            this.timecount = timecount;
+            this.hascode = hascode;
+            this.numbercount = numbercount;
+        }
+
+        abstract LocalDateTime time(T record, int column);
+        abstract String code(T record);
+        abstract double number(T record, int column);
+        abstract T make(RecordColumns<T> columns, int index);
+
+        // Add (or remove) the record at an index to the daily totals (see DailyAggregates).
+        // Most types count their first number (if they have one) on the day of their time.
+        void aggregate(RecordColumns<T> columns, int index, DailyAggregates daily, boolean add) {
+            int chunk = index >>> CHUNK_SHIFT;
+            int offset = index & (CHUNK - 1);
+            long time = columns.times[0][chunk][offset];
+            double amount = this.numbercount > 0 ? columns.numbers[0][chunk][offset] : 0;
+            if (add) {
+                daily.add(time, amount);
+            } else {
+                daily.remove(time, amount);
+            }
+        }
+    }
+
+    // The layout of each type of record.
+    public static final Layout<DiaperChangeRecord> DIAPERCHANGE = new Layout<DiaperChangeRecord>(1, true, 0) {
+        LocalDateTime time(DiaperChangeRecord record, int column) {
+            return record.getTime();
+        }
+        String code(DiaperChangeRecord record) {
+            return record.getType();
+        }
+        double number(DiaperChangeRecord record, int column) {
+            return 0;
+        }
+        DiaperChangeRecord make(RecordColumns<DiaperChangeRecord> columns, int index) {
+            return new DiaperChangeRecord(columns.getTime(index, 0), columns.getString(index));
+        }
+    };
+    public static final Layout<FeedingRecord> FEEDING = new Layout<FeedingRecord>(1, true, 1) {
+        LocalDateTime time(FeedingRecord record, int column) {
+            return record.getTime();
+        }
+        String code(FeedingRecord record) {
+            return record.getType();
+        }
+        double number(FeedingRecord record, int column) {
+            return record.getAmount();
+        }
+        FeedingRecord make(RecordColumns<FeedingRecord> columns, int index) {
+            return new FeedingRecord(columns.getTime(index, 0), columns.getString(index), columns.getNumber(index, 0));
+        }
+    };
+    public static final Layout<GrowthData> GROWTH = new Layout<GrowthData>(1, false, 2) {
+        LocalDateTime time(GrowthData record, int column) {
+            return record.getTime();
+        }
+        String code(GrowthData record) {
+            return null;
+        }
+        double number(GrowthData record, int column) {
+            return column == 0 ? record.getWeight() : record.getHeight();
+        }
+        GrowthData make(RecordColumns<GrowthData> columns, int index) {
+            return new GrowthData(columns.getTime(index, 0), columns.getNumber(index, 0), columns.getNumber(index, 1));
+        }
+    };
+    public static final Layout<MedicationRecord> MEDICATION = new Layout<MedicationRecord>(1, true, 1) {
+        LocalDateTime time(MedicationRecord record, int column) {
+            return record.getTime();
+        }
+        String code(MedicationRecord record) {
+            return record.getName();
+        }
+        double number(MedicationRecord record, int column) {
+            return record.getDosage();
+        }
+        MedicationRecord make(RecordColumns<MedicationRecord> columns, int index) {
+            return new MedicationRecord(columns.getTime(index, 0), columns.getString(index), columns.getNumber(index, 0));
+        }
+    };
+    public static final Layout<SleepSession> SLEEP = new Layout<SleepSession>(3, false, 0) {
+        LocalDateTime time(SleepSession record, int column) {
+            return column == 0 ? record.getRecordTime() : column == 1 ? record.getStartTime() : record.getEndTime();
+        }
+        String code(SleepSession record) {
+            return null;
+        }
+        double number(SleepSession record, int column) {
+            return 0;
+        }
+        SleepSession make(RecordColumns<SleepSession> columns, int index) {
+            return new SleepSession(columns.getTime(index, 0), columns.getTime(index, 1), columns.getTime(index, 2));
+        }
+        // Sleep counts the minutes from the start time to the end time on each day instead.
+        @Override
+        void aggregate(RecordColumns<SleepSession> columns, int index, DailyAggregates daily, boolean add) {
+            long start = columns.getSeconds(index, 1);
+            long end = columns.getSeconds(index, 2);
+            if (add) {
+                daily.addSpan(start, end);
+            } else {
+                daily.removeSpan(start, end);
+            }
+        }
+    };
+
+    private final Layout<T> layout;
+    // Each column is an array of chunks: times[column][chunk][offset], and so on.
+    private long[][][] times;
+    private int[][] codes;
+    private double[][][] numbers;
+    // How many chunks have been made so far, in every column.
+    private int chunks;
+    private int size;
+    // The index of each record, in order of its time (the first time column). Records with the same time are in
+    // the order they were added. Only the first size entries are used.
+    private int[] order;
+    // The running totals for each day (see DailyAggregates). These are only worked out the first time they are
+    // asked for, so loading doesn't pay for them, and are then kept up to date as records change.
+    private DailyAggregates daily;
+    // The dictionary of strings the codes stand for, which is usually shared by every child in a database.
+    private final RecordDictionary dictionary;
+    // The list of the same records that can't be changed (see readOnly), made the first time it is asked for.
+    private ReadOnlyView readonly;
+    // A number for the records as they are now, which changes whenever they do, e.g. so a report can tell
+    // whether it is out of date (see ReportCache). Every list takes its numbers from the same counter,
+    // so no two lists, or two states of the same list, ever have the same version.
+    private static final AtomicLong versions = new AtomicLong();
+    private volatile long version;
+
+    public RecordColumns(Layout<T> layout) {
+        this(layout, new RecordDictionary());
+    }
+    public RecordColumns(Layout<T> layout, RecordDictionary dictionary) {
+        this.layout = layout;
+        this.times = new long[layout.timecount][0][];
+        this.codes = new int[0][];
+        this.numbers = new double[layout.numbercount][0][];
+        this.chunks = 0;
+        this.size = 0;
+        this.order = new int[0];
+        this.dictionary = dictionary;
+        this.version = versions.incrementAndGet();
+    }
+
+    // Method to get a list of records as columns, for code that works on the columns directly.
+    // A list that is already in columns is returned as it is, and anything else is copied.
+    // So is a list of every record in time order (see inTimeOrder), since the columns it reads from hold the same
+    // records, and the charts only count them rather than going through them in order.
+    // A list that can't be changed (see readOnly) gives the columns it reads from, which must only be read.
+    @SuppressWarnings("unchecked")
+    public static <T> RecordColumns<T> from(Layout<T> layout, List<T> records) {
+        if (records instanceof RecordColumns.ReadOnlyView) {
+            records = ((RecordColumns<T>.ReadOnlyView) records).columns();
+        }
+        if (records instanceof RecordColumns.TimeView) {
+            RecordColumns<T> parent = ((RecordColumns<T>.TimeView) records).whole();
+            if (parent != null && parent.layout == layout) {
+                return parent;
+            }
+        }
+        if (records instanceof RecordColumns && ((RecordColumns<T>) records).layout == layout) {
+            return (RecordColumns<T>) records;
+        }
+        RecordColumns<T> columns = new RecordColumns<>(layout);
+        columns.addAll(records);
+        return columns;
+    }
+
+    // Method to get the layout for a type of record (see RecordFormat).
+    public static Layout<?> layout(String type) {
+        switch (type) {
+            case RecordFormat.DIAPERCHANGE:
+                return DIAPERCHANGE;
+            case RecordFormat.FEEDING:
+                return FEEDING;
+            case RecordFormat.GROWTH:
+                return GROWTH;
+            case RecordFormat.MEDICATION:
+                return MEDICATION;
+            default:
+                return SLEEP;
+        }
+    }
+
+    // Methods to read single fields straight from the columns, without making a record.
+    public LocalDateTime getTime(int index, int column) {
+        return LocalDateTime.ofEpochSecond(this.getSeconds(index, column), 0, ZoneOffset.UTC);
+    }
+    public long getSeconds(int index, int column) {
+        this.check(index);
+        return this.times[column][index >>> CHUNK_SHIFT][index & (CHUNK - 1)];
+    }
+    public String getString(int index) {
+        return this.dictionary.get(this.getCode(index));
+    }
+    // The code of the string in the dictionary, which is quicker to compare or count than the string.
+    public int getCode(int index) {
+        this.check(index);
+        return this.codes[index >>> CHUNK_SHIFT][index & (CHUNK - 1)];
+    }
+    public double getNumber(int index, int column) {
+        this.check(index);
+        return this.numbers[column][index >>> CHUNK_SHIFT][index & (CHUNK - 1)];
+    }
+
+    public RecordDictionary getDictionary() {
+        return this.dictionary;
+    }
+
+    // Methods to get the records in order of time, oldest first. Each returns a list that reads straight from
+    // the columns here, so it only takes a binary search to make, however many records there are.
+    // The list can't be changed, and stops working once this one is changed, like a subList.
+    public List<T> inTimeOrder() {
+        return new TimeView(0, this.size);
+    }
+    // The records from (inclusive) up to (exclusive) the given times. Either can be null for no limit.
+    public List<T> between(LocalDateTime from, LocalDateTime to) {
+        int start = from == null ? 0 : this.search(from.toEpochSecond(ZoneOffset.UTC), false);
+        int end = to == null ? this.size : this.search(to.toEpochSecond(ZoneOffset.UTC), false);
+        return new TimeView(start, Math.max(start, end));
+    }
+    // The latest records, up to the given number of them.
+    public List<T> last(int count) {
+        return new TimeView(Math.max(0, this.size - Math.max(0, count)), this.size);
+    }
+    // Method to get the records in the order they were added, as a list that can't be changed.
+    // Unlike the lists above, it reads straight from the columns as they are now, so it keeps working as they change.
+    public List<T> readOnly() {
+        if (this.readonly == null) {
+            this.readonly = new ReadOnlyView();
+        }
+        return this.readonly;
+    }
+    // Method to get the running totals for each day.
+    public DailyAggregates getDailyAggregates() {
+        if (this.daily == null) {
+            this.daily = new DailyAggregates();
+            this.aggregateAdded(0);
+        }
+        return this.daily;
+    }
+
+    // Methods for RecordRollups, to find the first position in order of time from the given time,
+    // and to get the amount a record is counted as (see DailyAggregates).
+    int position(long seconds) {
+        return this.search(seconds, false);
+    }
+    double getAmount(int index) {
+        return this.layout.numbercount > 0 ? this.getNumber(index, 0) : 0;
+    }
+    boolean isSleep() {
+        return this.layout == SLEEP;
+    }
+
+    // Method to get the version of the records (see above).
+    public long getVersion() {
+        return this.version;
+    }
+
+    // Method to get the index of the record at a position in order of time, e.g. to read its fields directly.
+    public int getTimeOrderIndex(int position) {
+        this.check(position);
+        return this.order[position];
+    }
+
+    // The methods that make this a list.
+    @Override
+    public T get(int index) {
+        this.check(index);
+        return this.layout.make(this, index);
+    }
+    @Override
+    public int size() {
+        return this.size;
+    }
+    @Override
+    public T set(int index, T record) {
+        T previous = this.get(index);
+        // Its time may have changed, so take it out of the order and put it back in.
+        this.unindex(index);
+        this.aggregate(index, false);
+        this.put(index, record);
+        this.index(index);
+        this.changed();
+        return previous;
+    }
+    @Override
+    public void add(int index, T record) {
+        if (index < 0 || index > this.size) {
+            throw new IndexOutOfBoundsException("Index " + index + " out of bounds for length " + this.size);
+        }
+        this.grow(this.size + 1);
+        // Move everything after it along one, then put it in the gap.
+        // Adding to the end is much more common, and then nothing needs moving.
+        for (int i = this.size; i > index; i--) {
+            this.move(i - 1, i);
+        }
+        if (index < this.size) {
+            this.renumber(index, 1);
+        }
+        this.size++;
+        this.put(index, record);
+        this.index(index);
+        this.changed();
+    }
+    @Override
+    public T remove(int index) {
+        T previous = this.get(index);
+        this.unindex(index);
+        this.aggregate(index, false);
+        // Move everything after it back one, over the top of it.
+        for (int i = index + 1; i < this.size; i++) {
+            this.move(i, i - 1);
+        }
+        this.size--;
+        if (index < this.size) {
+            this.renumber(index + 1, -1);
+        }
+        this.changed();
+        return previous;
+    }
+    @Override
+    public void clear() {
+        this.size = 0;
+        if (this.daily != null) {
+            this.daily.clear();
+        }
+        this.changed();
+    }
+    // Adding another list of columns copies the columns across, without making any records.
+    // If both use the same dictionary, even the codes can be copied as they are.
+    @Override
+    @SuppressWarnings("unchecked")
+    public boolean addAll(Collection<? extends T> records) {
+        if (records instanceof RecordColumns.ReadOnlyView) {
+            records = ((RecordColumns<T>.ReadOnlyView) records).columns();
+        }
+        if (!(records instanceof RecordColumns) || ((RecordColumns<?>) records).layout != this.layout) {
+            return super.addAll(records);
+        }
+        RecordColumns<?> other = (RecordColumns<?>) records;
+        int[] codemap = this.mapCodes(other.dictionary);
+        int count = other.size;
+        this.grow(this.size + count);
+        for (int i = 0; i < count; i++) {
+            int from = i;
+            int to = this.size + i;
+            for (int column = 0; column < this.times.length; column++) {
+                this.times[column][to >>> CHUNK_SHIFT][to & (CHUNK - 1)] = other.times[column][from >>> CHUNK_SHIFT][from & (CHUNK - 1)];
+            }
+            if (this.layout.hascode) {
+                int code = other.codes[from >>> CHUNK_SHIFT][from & (CHUNK - 1)];
+                this.codes[to >>> CHUNK_SHIFT][to & (CHUNK - 1)] = codemap == null ? code : codemap[code];
+            }
+            for (int column = 0; column < this.numbers.length; column++) {
+                this.numbers[column][to >>> CHUNK_SHIFT][to & (CHUNK - 1)] = other.numbers[column][from >>> CHUNK_SHIFT][from & (CHUNK - 1)];
+            }
+        }
+        this.size += count;
+        this.indexAdded(this.size - count);
+        this.aggregateAdded(this.size - count);
+        this.changed();
+        return count > 0;
+    }
+
+    // Method to add one record from another list of columns with the same layout, without making a record.
+    void add(RecordColumns<T> other, int index) {
+        other.check(index);
+        int to = this.size;
+        this.grow(to + 1);
+        int fromchunk = index >>> CHUNK_SHIFT;
+        int fromoffset = index & (CHUNK - 1);
+        for (int column = 0; column < this.times.length; column++) {
+            this.times[column][to >>> CHUNK_SHIFT][to & (CHUNK - 1)] = other.times[column][fromchunk][fromoffset];
+        }
+        if (this.layout.hascode) {
+            int code = other.codes[fromchunk][fromoffset];
+            this.codes[to >>> CHUNK_SHIFT][to & (CHUNK - 1)] = other.dictionary == this.dictionary ? code : this.dictionary.code(other.dictionary.get(code));
+        }
+        for (int column = 0; column < this.numbers.length; column++) {
+            this.numbers[column][to >>> CHUNK_SHIFT][to & (CHUNK - 1)] = other.numbers[column][fromchunk][fromoffset];
+        }
+        this.size++;
+        this.index(to);
+        this.aggregate(to, true);
+        this.changed();
+    }
+
+    // Method to make a new, empty list with the same layout and dictionary as this one.
+    RecordColumns<T> newEmpty() {
+        return new RecordColumns<>(this.layout, this.dictionary);
+    }
+
+    // Method to add records straight from the columns of a record file (see RecordFile), without making any records.
+    // The columns have the same layout as here, with times in seconds, and codes into the given dictionary.
+    void addColumns(int count, long[][] filetimes, int[] filecodes, String[] filedictionary, double[][] filenumbers) {
+        int[] codemap = new int[filedictionary.length];
+        for (int i = 0; i < codemap.length; i++) {
+            codemap[i] = this.dictionary.code(filedictionary[i]);
+        }
+        this.grow(this.size + count);
+        for (int i = 0; i < count; i++) {
+            int to = this.size + i;
+            for (int column = 0; column < this.times.length; column++) {
+                this.times[column][to >>> CHUNK_SHIFT][to & (CHUNK - 1)] = filetimes[column][i];
+            }
+            if (this.layout.hascode) {
+                this.codes[to >>> CHUNK_SHIFT][to & (CHUNK - 1)] = codemap[filecodes[i]];
+            }
+            for (int column = 0; column < this.numbers.length; column++) {
+                this.numbers[column][to >>> CHUNK_SHIFT][to & (CHUNK - 1)] = filenumbers[column][i];
+            }
+        }
+        this.size += count;
+        this.indexAdded(this.size - count);
+        this.aggregateAdded(this.size - count);
+        this.changed();
+    }
+
+    // Helper method to write a record's fields into the columns at an index, and count it in the daily totals.
+    private void put(int index, T record) {
+        int chunk = index >>> CHUNK_SHIFT;
+        int offset = index & (CHUNK - 1);
+        for (int column = 0; column < this.times.length; column++) {
+            this.times[column][chunk][offset] = this.layout.time(record, column).toEpochSecond(ZoneOffset.UTC);
+        }
+        if (this.layout.hascode) {
+            this.codes[chunk][offset] = this.dictionary.code(this.layout.code(record));
+        }
+        for (int column = 0; column < this.numbers.length; column++) {
+            this.numbers[column][chunk][offset] = this.layout.number(record, column);
+        }
+        this.aggregate(index, true);
+    }
+
+    // Helper method to copy the fields at one index to another.
+    private void move(int from, int to) {
+        int fromchunk = from >>> CHUNK_SHIFT;
+        int fromoffset = from & (CHUNK - 1);
+        int tochunk = to >>> CHUNK_SHIFT;
+        int tooffset = to & (CHUNK - 1);
+        for (long[][] column : this.times) {
+            column[tochunk][tooffset] = column[fromchunk][fromoffset];
+        }
+        if (this.layout.hascode) {
+            this.codes[tochunk][tooffset] = this.codes[fromchunk][fromoffset];
+        }
+        for (double[][] column : this.numbers) {
+            column[tochunk][tooffset] = column[fromchunk][fromoffset];
+        }
+    }
+
+    // Helper methods to add (or remove) records to the daily totals, if they are being kept.
+    private void aggregate(int index, boolean add) {
+        if (this.daily != null) {
+            this.layout.aggregate(this, index, this.daily, add);
+        }
+    }
+    private void aggregateAdded(int start) {
+        for (int i = start; this.daily != null && i < this.size; i++) {
+            this.layout.aggregate(this, i, this.daily, true);
+        }
+    }
+
+    // Helper method to get the time of a record that the order is sorted by.
+    private long key(int index) {
+        return this.times[0][index >>> CHUNK_SHIFT][index & (CHUNK - 1)];
+    }
+
+    // Helper method to note that the records have changed, for iterators (modCount) and getVersion.
+    private void changed() {
+        this.modCount++;
+        this.version = versions.incrementAndGet();
+    }
+
+    // Helper method to binary search the order for the first position with a time after (or from, if not after)
+    // the given one, out of the first count positions.
+    private int search(long seconds, boolean after, int count) {
+        int low = 0;
+        int high = count;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            long key = this.key(this.order[middle]);
+            if (key < seconds || (after && key == seconds)) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+    private int search(long seconds, boolean after) {
+        return this.search(seconds, after, this.size);
+    }
+
+    // Helper method to put a record that has just been added into the order, after any with the same time.
+    // Only the records before it are in the order so far. When records are added in order of time, which is
+    // usually the case, it goes on the end, otherwise the ones after it are moved along in one copy.
+    private void index(int index) {
+        int count = this.size - 1;
+        int position = this.search(this.key(index), true, count);
+        System.arraycopy(this.order, position, this.order, position + 1, count - position);
+        this.order[position] = index;
+    }
+
+    // Helper method to take a record out of the order, before it is removed or changed.
+    private void unindex(int index) {
+        int position = this.search(this.key(index), false);
+        while (this.order[position] != index) {
+            position++;
+        }
+        System.arraycopy(this.order, position + 1, this.order, position, this.size - position - 1);
+    }
+
+    // Helper method to change the index of every record from the given one on in the order, once they have been
+    // moved along (or back) by records being added (or removed) in the middle.
+    private void renumber(int from, int change) {
+        for (int i = 0; i < this.size; i++) {
+            if (this.order[i] >= from) {
+                this.order[i] += change;
+            }
+        }
+    }
+
+    // Helper method to put records that have just been added on the end into the order, from the given index on.
+    // If they are in order of time and after everything before, which is the case when loading records oldest first,
+    // they just go on the end. Otherwise the whole order is sorted again.
+    private void indexAdded(int start) {
+        long previous = start > 0 ? this.key(this.order[start - 1]) : Long.MIN_VALUE;
+        for (int i = start; i < this.size; i++) {
+            long key = this.key(i);
+            if (key < previous) {
+                this.sortOrder();
+                return;
+            }
+            this.order[i] = i;
+            previous = key;
+        }
+    }
+
+    // Helper method to sort the order from scratch, with a merge sort so records with the same time stay in order.
+    private void sortOrder() {
+        long[] keys = new long[this.size];
+        int[] sorted = new int[this.size];
+        for (int i = 0; i < this.size; i++) {
+            keys[i] = this.key(i);
+            sorted[i] = i;
+        }
+        int[] merged = new int[this.size];
+        for (int width = 1; width < this.size; width *= 2) {
+            for (int low = 0; low < this.size; low += 2 * width) {
+                int middle = Math.min(low + width, this.size);
+                int high = Math.min(low + 2 * width, this.size);
+                int left = low;
+                int right = middle;
+                int to = low;
+                while (left < middle && right < high) {
+                    merged[to++] = keys[sorted[right]] < keys[sorted[left]] ? sorted[right++] : sorted[left++];
+                }
+                while (left < middle) {
+                    merged[to++] = sorted[left++];
+                }
+                while (right < high) {
+                    merged[to++] = sorted[right++];
+                }
+            }
+            int[] swap = sorted;
+            sorted = merged;
+            merged = swap;
+        }
+        System.arraycopy(sorted, 0, this.order, 0, this.size);
+    }
+
+    // Helper method to make enough chunks for the given number of records.
+    private void grow(int capacity) {
+        // The order is a single array, which doubles in size when it runs out of room.
+        if (this.order.length < capacity) {
+            this.order = Arrays.copyOf(this.order, Math.max(capacity, this.order.length * 2));
+        }
+        int needed = (capacity + CHUNK - 1) >>> CHUNK_SHIFT;
+        if (needed <= this.chunks) {
+            return;
+        }
+        // Only the small arrays of chunks are copied, never the chunks themselves.
+        for (int column = 0; column < this.times.length; column++) {
+            this.times[column] = Arrays.copyOf(this.times[column], needed);
+        }
+        if (this.layout.hascode) {
+            this.codes = Arrays.copyOf(this.codes, needed);
+        }
+        for (int column = 0; column < this.numbers.length; column++) {
+            this.numbers[column] = Arrays.copyOf(this.numbers[column], needed);
+        }
+        for (int chunk = this.chunks; chunk < needed; chunk++) {
+            for (long[][] column : this.times) {
+                column[chunk] = new long[CHUNK];
+            }
+            if (this.layout.hascode) {
+                this.codes[chunk] = new int[CHUNK];
+            }
+            for (double[][] column : this.numbers) {
+                column[chunk] = new double[CHUNK];
+            }
+        }
+        this.chunks = needed;
+    }
+
+    // Helper method to work out the code here for each code in another dictionary, or null if it is the same one.
+    private int[] mapCodes(RecordDictionary other) {
+        if (other == this.dictionary) {
+            return null;
+        }
+        int[] codemap = new int[other.size()];
+        for (int i = 0; i < codemap.length; i++) {
+            codemap[i] = this.dictionary.code(other.get(i));
+        }
+        return codemap;
+    }
+
+    // A list of the records between two positions in order of time, which reads straight from the columns.
+    private class TimeView extends AbstractList<T> implements RandomAccess {
+        private final int start;
+        private final int end;
+        // The list it is a view of must not change while it is in use.
+        private final int expected;
+
+        private TimeView(int start, int end) {
+            this.start = start;
+            this.end = end;
+            this.expected = RecordColumns.this.modCount;
+        }
+
+        @Override
+        public T get(int position) {
+            if (RecordColumns.this.modCount != this.expected) {
+                throw new ConcurrentModificationException();
+            }
+            if (position < 0 || position >= this.end - this.start) {
+                throw new IndexOutOfBoundsException("Index " + position + " out of bounds for length " + (this.end - this.start));
+            }
+            return RecordColumns.this.layout.make(RecordColumns.this, RecordColumns.this.order[this.start + position]);
+        }
+
+        @Override
+        public int size() {
+            return this.end - this.start;
+        }
+
+        // The list this is a view of, if this covers all of it and it hasn't changed since, or null if not.
+        private RecordColumns<T> whole() {
+            if (this.start == 0 && this.end == RecordColumns.this.size && RecordColumns.this.modCount == this.expected) {
+                return RecordColumns.this;
+            }
+            return null;
+        }
+    }
+
+    // A list of the records in the order they were added, which reads straight from the columns but can't change them.
+    private class ReadOnlyView extends AbstractList<T> implements RandomAccess {
+        @Override
+        public T get(int index) {
+            return RecordColumns.this.get(index);
+        }
+
+        @Override
+        public int size() {
+            return RecordColumns.this.size;
+        }
+
+        // The list this is a view of.
+        private RecordColumns<T> columns() {
+            return RecordColumns.this;
+        }
+    }
+
+    // Helper method to check an index is in the list.
+    private void check(int index) {
+        if (index < 0 || index >= this.size) {
+            throw new IndexOutOfBoundsException("Index " + index + " out of bounds for length " + this.size);
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package application.Functionality;
+
+// Modules for looking up the code of a string.
+import java.util.Arrays;
+import java.util.HashMap;
+
+// This class is a dictionary of the strings that records use, such as feeding types ("Formula"), nappy types
+// ("Wet nappy") and medication names ("Paracetamol"). There are only ever a handful of them, so records store
+// the code of their string in here (see RecordColumns) instead of a string of their own, and comparing or
+// counting them is just comparing or counting ints.
+// Each ChildDatabase has one dictionary that all of its children's records share, so a string is only
+// ever kept once, and codes mean the same thing for every child.
+// Codes are given out in the order strings are first seen, starting from 0, and never change.
+// It is safe to use from any thread, since the database loads children in parallel.
+public class RecordDictionary {
+    // The string for each code. This is replaced rather than changed when a string is added,
+    // so it can be read without locking.
+    private volatile String[] values;
+    // The code for each string.
+    private HashMap<String, Integer> codes;
+
+    public RecordDictionary() {
+        this.values = new String[0];
+        this.codes = new HashMap<>();
+    }
+
+    // Method to get the code for a string, adding it to the dictionary if it is new.
+    public synchronized int code(String value) {
+        Integer code = this.codes.get(value);
+        if (code == null) {
+            code = this.values.length;
+            String[] newvalues = Arrays.copyOf(this.values, code + 1);
+            newvalues[code] = value;
+            this.codes.put(value, code);
+            this.values = newvalues;
+        }
+        return code;
+    }
+
+    // Method to get the code for a string without adding it, or -1 if it isn't in the dictionary.
+    // Useful for checking records against a string, since no record can have a string that isn't in here.
+    public synchronized int find(String value) {
+        Integer code = this.codes.get(value);
+        return code == null ? -1 : code;
+    }
+
+    // Method to get the string for a code.
+    public String get(int code) {
+        return this.values[code];
+    }
+
+    // Method to get how many strings are in the dictionary, so an array indexed by code can be made.
+    public int size() {
+        return this.values.length;
+    }
+}
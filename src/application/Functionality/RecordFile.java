@@ -0,0 +1,392 @@
+package application.Functionality;
+
+import application.*;
+
+// Modules for reading and writing binary files, and the old CSV files.
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Scanner;
+
+// This class reads and writes the record files (dr.dat, fr.dat, gr.dat, mr.dat, sr.dat).
+// Record files used to be CSV, which meant splitting every line and parsing every date and number from text.
+// They are now written in a compact binary format instead, which is laid out as follows:
+// - The magic number "BTRF", then a version byte, so we can tell it apart from an old CSV file.
+// - A dictionary of the strings used by the records (e.g. "Formula"), so each is only stored once.
+// - The number of records, then the records themselves, one column at a time: the times (as epoch seconds),
+//   then the dictionary indexes of the strings, then the numbers, in the order the record constructor takes them.
+//   Version 2 compresses each column with RecordCodec, into a block of bytes written after its length.
+//   Any time columns after the first are written as the gap from the column before.
+//   Version 1 had no compression, and wrote each record in turn using fixed-width fields instead:
+//   times as 8 bytes, numbers as raw doubles (8 bytes), strings as dictionary indexes (4 bytes).
+// Old CSV and version 1 files can still be read. ChildDatabase rewrites them in the latest format once they have been loaded.
+// Like AppStorage, it only contains static methods, so objects must not be created.
+public class RecordFile {
+    // The magic number at the start of every binary record file ("BTRF" in ASCII).
+    private static final int MAGIC = 0x42545246;
+    // The version of the binary format. Increase this if the layout ever changes.
+    private static final byte VERSION = 2;
+
+    // Make the constructor private and empty so objects cannot be created.
+    private RecordFile() {}
+
+    // Check whether a record file is in an old format and needs to be migrated to the latest binary one.
+    // Empty files have nothing to migrate.
+    public static boolean needsMigration(File file) {
+        if (file.length() == 0) {
+            return false;
+        }
+        try {
+            DataInputStream fileread = new DataInputStream(new FileInputStream(file));
+            boolean latest = file.length() >= 5 && fileread.readInt() == MAGIC && fileread.readByte() == VERSION;
+            fileread.close();
+            return !latest;
+        } catch (IOException e) {
+            return true;
+        }
+    }
+
+    // Check whether a record file starts with our magic number.
+    public static boolean isBinary(File file) {
+        try {
+            DataInputStream fileread = new DataInputStream(new FileInputStream(file));
+            boolean binary = file.length() >= 5 && fileread.readInt() == MAGIC;
+            fileread.close();
+            return binary;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    // Method to read a record file of the given type (see RecordFormat), for code that handles every type alike.
+    public static List<?> read(File file, String type) {
+        switch (type) {
+            case RecordFormat.DIAPERCHANGE:
+                return readDiaperChanges(file);
+            case RecordFormat.FEEDING:
+                return readFeedings(file);
+            case RecordFormat.GROWTH:
+                return readGrowths(file);
+            case RecordFormat.MEDICATION:
+                return readMedications(file);
+            default:
+                return readSleeps(file);
+        }
+    }
+
+    // Methods to read each type of record file, whichever format it is in.
+    // The records are kept as columns (see RecordColumns), which a binary file's columns are copied straight into,
+    // so no record objects are made while loading.
+    // An empty file (e.g. one that has just been created) has no records.
+    public static RecordColumns<DiaperChangeRecord> readDiaperChanges(File file) {
+        RecordColumns<DiaperChangeRecord> records = new RecordColumns<>(RecordColumns.DIAPERCHANGE);
+        if (!isBinary(file)) {
+            // Old CSV file. RecordFormat returns null for any bad entry, which we skip past.
+            for (String line : readLines(file)) {
+                DiaperChangeRecord record = RecordFormat.parseDiaperChange(line);
+                if (record != null) {
+                    records.add(record);
+                }
+            }
+            return records;
+        }
+        Columns columns = readColumns(file, 1, true, 0);
+        records.addColumns(columns.count, columns.times, columns.codes, columns.dictionary, columns.numbers);
+        return records;
+    }
+    public static RecordColumns<FeedingRecord> readFeedings(File file) {
+        RecordColumns<FeedingRecord> records = new RecordColumns<>(RecordColumns.FEEDING);
+        if (!isBinary(file)) {
+            for (String line : readLines(file)) {
+                FeedingRecord record = RecordFormat.parseFeeding(line);
+                if (record != null) {
+                    records.add(record);
+                }
+            }
+            return records;
+        }
+        Columns columns = readColumns(file, 1, true, 1);
+        records.addColumns(columns.count, columns.times, columns.codes, columns.dictionary, columns.numbers);
+        return records;
+    }
+    public static RecordColumns<GrowthData> readGrowths(File file) {
+        RecordColumns<GrowthData> records = new RecordColumns<>(RecordColumns.GROWTH);
+        if (!isBinary(file)) {
+            for (String line : readLines(file)) {
+                GrowthData record = RecordFormat.parseGrowth(line);
+                if (record != null) {
+                    records.add(record);
+                }
+            }
+            return records;
+        }
+        Columns columns = readColumns(file, 1, false, 2);
+        records.addColumns(columns.count, columns.times, columns.codes, columns.dictionary, columns.numbers);
+        return records;
+    }
+    public static RecordColumns<MedicationRecord> readMedications(File file) {
+        RecordColumns<MedicationRecord> records = new RecordColumns<>(RecordColumns.MEDICATION);
+        if (!isBinary(file)) {
+            for (String line : readLines(file)) {
+                MedicationRecord record = RecordFormat.parseMedication(line);
+                if (record != null) {
+                    records.add(record);
+                }
+            }
+            return records;
+        }
+        Columns columns = readColumns(file, 1, true, 1);
+        records.addColumns(columns.count, columns.times, columns.codes, columns.dictionary, columns.numbers);
+        return records;
+    }
+    public static RecordColumns<SleepSession> readSleeps(File file) {
+        RecordColumns<SleepSession> records = new RecordColumns<>(RecordColumns.SLEEP);
+        if (!isBinary(file)) {
+            for (String line : readLines(file)) {
+                SleepSession record = RecordFormat.parseSleep(line);
+                if (record != null) {
+                    records.add(record);
+                }
+            }
+            return records;
+        }
+        // Record time, then start time, then end time.
+        Columns columns = readColumns(file, 3, false, 0);
+        records.addColumns(columns.count, columns.times, columns.codes, columns.dictionary, columns.numbers);
+        return records;
+    }
+
+    // Method to write a record file of the given type, for code that handles every type alike.
+    @SuppressWarnings("unchecked")
+    public static void write(File file, String type, List<?> records) throws IOException {
+        switch (type) {
+            case RecordFormat.DIAPERCHANGE:
+                writeDiaperChanges(file, (List<DiaperChangeRecord>) records);
+                break;
+            case RecordFormat.FEEDING:
+                writeFeedings(file, (List<FeedingRecord>) records);
+                break;
+            case RecordFormat.GROWTH:
+                writeGrowths(file, (List<GrowthData>) records);
+                break;
+            case RecordFormat.MEDICATION:
+                writeMedications(file, (List<MedicationRecord>) records);
+                break;
+            default:
+                writeSleeps(file, (List<SleepSession>) records);
+                break;
+        }
+    }
+
+    // Methods to write each type of record file in the binary format.
+    // The records are already kept as columns (see RecordColumns), which are then compressed by writeColumns.
+    // These throw IOException rather than crashing, so ChildDatabase can clean up after a failed compaction.
+    public static void writeDiaperChanges(File file, List<DiaperChangeRecord> records) throws IOException {
+        RecordColumns<DiaperChangeRecord> columns = RecordColumns.from(RecordColumns.DIAPERCHANGE, records);
+        ArrayList<String> dictionary = new ArrayList<>();
+        int[] types = codeColumn(columns, dictionary);
+        writeColumns(file, dictionary, new long[][] {timeColumn(columns, 0)}, types, new double[0][]);
+    }
+    public static void writeFeedings(File file, List<FeedingRecord> records) throws IOException {
+        RecordColumns<FeedingRecord> columns = RecordColumns.from(RecordColumns.FEEDING, records);
+        ArrayList<String> dictionary = new ArrayList<>();
+        int[] types = codeColumn(columns, dictionary);
+        writeColumns(file, dictionary, new long[][] {timeColumn(columns, 0)}, types, new double[][] {numberColumn(columns, 0)});
+    }
+    public static void writeGrowths(File file, List<GrowthData> records) throws IOException {
+        RecordColumns<GrowthData> columns = RecordColumns.from(RecordColumns.GROWTH, records);
+        // Weights, then heights.
+        writeColumns(file, new ArrayList<>(), new long[][] {timeColumn(columns, 0)}, null, new double[][] {numberColumn(columns, 0), numberColumn(columns, 1)});
+    }
+    public static void writeMedications(File file, List<MedicationRecord> records) throws IOException {
+        RecordColumns<MedicationRecord> columns = RecordColumns.from(RecordColumns.MEDICATION, records);
+        ArrayList<String> dictionary = new ArrayList<>();
+        int[] names = codeColumn(columns, dictionary);
+        writeColumns(file, dictionary, new long[][] {timeColumn(columns, 0)}, names, new double[][] {numberColumn(columns, 0)});
+    }
+    public static void writeSleeps(File file, List<SleepSession> records) throws IOException {
+        RecordColumns<SleepSession> columns = RecordColumns.from(RecordColumns.SLEEP, records);
+        // Record time, then start time, then end time.
+        long[][] times = new long[][] {timeColumn(columns, 0), timeColumn(columns, 1), timeColumn(columns, 2)};
+        writeColumns(file, new ArrayList<>(), times, null, new double[0][]);
+    }
+
+    // Helper methods to copy a column out of the records, ready to be written.
+    private static long[] timeColumn(RecordColumns<?> columns, int column) {
+        long[] times = new long[columns.size()];
+        for (int i = 0; i < times.length; i++) {
+            times[i] = columns.getSeconds(i, column);
+        }
+        return times;
+    }
+    private static double[] numberColumn(RecordColumns<?> columns, int column) {
+        double[] numbers = new double[columns.size()];
+        for (int i = 0; i < numbers.length; i++) {
+            numbers[i] = columns.getNumber(i, column);
+        }
+        return numbers;
+    }
+    // The codes are renumbered into a dictionary of only the strings this file uses, which is filled in,
+    // since the database's dictionary (see RecordDictionary) can hold strings that this file doesn't.
+    private static int[] codeColumn(RecordColumns<?> columns, ArrayList<String> dictionary) {
+        int[] filecodes = new int[columns.getDictionary().size()];
+        Arrays.fill(filecodes, -1);
+        int[] codes = new int[columns.size()];
+        for (int i = 0; i < codes.length; i++) {
+            int code = columns.getCode(i);
+            if (filecodes[code] < 0) {
+                filecodes[code] = dictionary.size();
+                dictionary.add(columns.getDictionary().get(code));
+            }
+            codes[i] = filecodes[code];
+        }
+        return codes;
+    }
+
+    // The columns of a record file, once read: each column of times, the dictionary codes (if the type has them),
+    // and each column of numbers.
+    private static class Columns {
+        private String[] dictionary;
+        private int count;
+        private long[][] times;
+        private int[] codes;
+        private double[][] numbers;
+    }
+
+    // Helper method to read the columns of a binary record file, given how many of each the type has.
+    private static Columns readColumns(File file, int timecount, boolean hascodes, int numbercount) {
+        Columns columns = new Columns();
+        columns.times = new long[timecount][];
+        columns.numbers = new double[numbercount][];
+        try {
+            DataInputStream fileread = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 65536));
+            try {
+                if (fileread.readInt() != MAGIC) {
+                    throw new IOException("Not a binary record file.");
+                }
+                byte version = fileread.readByte();
+                if (version != 1 && version != VERSION) {
+                    throw new IOException("Unsupported record file version " + version + ".");
+                }
+                columns.dictionary = new String[fileread.readInt()];
+                for (int i = 0; i < columns.dictionary.length; i++) {
+                    columns.dictionary[i] = fileread.readUTF();
+                }
+                columns.count = fileread.readInt();
+                if (version == 1) {
+                    readRows(fileread, columns, hascodes);
+                } else {
+                    // Read the whole compressed block in one go, then unpack each column from it.
+                    byte[] block = new byte[fileread.readInt()];
+                    fileread.readFully(block);
+                    RecordCodec.BitReader blockread = new RecordCodec.BitReader(block);
+                    for (int i = 0; i < timecount; i++) {
+                        columns.times[i] = RecordCodec.readTimes(blockread, columns.count);
+                        // Turn the gaps back into times.
+                        for (int row = 0; i > 0 && row < columns.count; row++) {
+                            columns.times[i][row] += columns.times[i - 1][row];
+                        }
+                    }
+                    if (hascodes) {
+                        columns.codes = RecordCodec.readCodes(blockread, columns.count, columns.dictionary.length);
+                    }
+                    for (int i = 0; i < numbercount; i++) {
+                        columns.numbers[i] = RecordCodec.readDoubles(blockread, columns.count);
+                    }
+                }
+            } finally {
+                fileread.close();
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Unable to read the record file " + file.getPath() + ".", e);
+        }
+        return columns;
+    }
+
+    // Helper method to read the records of a version 1 file, which are written one after another, into columns.
+    private static void readRows(DataInputStream fileread, Columns columns, boolean hascodes) throws IOException {
+        for (int i = 0; i < columns.times.length; i++) {
+            columns.times[i] = new long[columns.count];
+        }
+        if (hascodes) {
+            columns.codes = new int[columns.count];
+        }
+        for (int i = 0; i < columns.numbers.length; i++) {
+            columns.numbers[i] = new double[columns.count];
+        }
+        for (int row = 0; row < columns.count; row++) {
+            for (long[] times : columns.times) {
+                times[row] = fileread.readLong();
+            }
+            if (hascodes) {
+                columns.codes[row] = fileread.readInt();
+            }
+            for (double[] numbers : columns.numbers) {
+                numbers[row] = fileread.readDouble();
+            }
+        }
+    }
+
+    // Helper method to write a binary record file from its dictionary and columns.
+    // Codes is null for types without any strings.
+    private static void writeColumns(File file, ArrayList<String> dictionary, long[][] times, int[] codes, double[][] numbers) throws IOException {
+        int count = times[0].length;
+        // Compress every column into one block first, since its length goes before it.
+        RecordCodec.BitWriter block = new RecordCodec.BitWriter();
+        RecordCodec.writeTimes(block, times[0]);
+        // Any other times (e.g. when a sleep started and ended) are written as the gap from the column before,
+        // which tends to be much the same from one record to the next.
+        for (int i = 1; i < times.length; i++) {
+            long[] gaps = new long[count];
+            for (int row = 0; row < count; row++) {
+                gaps[row] = times[i][row] - times[i - 1][row];
+            }
+            RecordCodec.writeTimes(block, gaps);
+        }
+        if (codes != null) {
+            RecordCodec.writeCodes(block, codes, dictionary.size());
+        }
+        for (double[] column : numbers) {
+            RecordCodec.writeDoubles(block, column);
+        }
+        byte[] blockbytes = block.toByteArray();
+        DataOutputStream filewrite = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file, false), 65536));
+        try {
+            filewrite.writeInt(MAGIC);
+            filewrite.writeByte(VERSION);
+            filewrite.writeInt(dictionary.size());
+            for (String value : dictionary) {
+                filewrite.writeUTF(value);
+            }
+            filewrite.writeInt(count);
+            filewrite.writeInt(blockbytes.length);
+            filewrite.write(blockbytes);
+        } finally {
+            filewrite.close();
+        }
+    }
+
+    // Helper method to read the lines of an old CSV record file.
+    private static ArrayList<String> readLines(File file) {
+        ArrayList<String> lines = new ArrayList<>();
+        try {
+            Scanner fileread = new Scanner(file);
+            while (fileread.hasNextLine()) {
+                lines.add(fileread.nextLine());
+            }
+            fileread.close();
+        } catch (FileNotFoundException e) {
+            // The file doesn't exist, so there are no records.
+        }
+        return lines;
+    }
+}
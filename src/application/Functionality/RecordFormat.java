@@ -0,0 +1,223 @@
+package application.Functionality;
+
+import application.*;
+
+import java.time.DateTimeException;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+
+// This class contains the methods for converting records to and from the lines of our record files.
+// It is shared by ChildDatabase (record files) and RecordJournal (journal file), so the format only lives here.
+// Like AppStorage, it only contains static methods, so objects must not be created.
+public class RecordFormat {
+    // Shorthand type names, which match the record file names (e.g. fr -> fr.dat).
+    public static final String DIAPERCHANGE = "dr";
+    public static final String FEEDING = "fr";
+    public static final String GROWTH = "gr";
+    public static final String MEDICATION = "mr";
+    public static final String SLEEP = "sr";
+    // All the types, in the same order the record files have always been read and written.
+    public static final String[] TYPES = {DIAPERCHANGE, FEEDING, GROWTH, MEDICATION, SLEEP};
+
+    // Make the constructor private and empty so objects cannot be created.
+    private RecordFormat() {}
+
+    // Methods to convert each record into a line, in the way we expect to read it back.
+    // Note that these do not include the newline at the end.
+    public static String toLine(DiaperChangeRecord dr) {
+        return dr.getTime() + "," + dr.getType();
+    }
+    public static String toLine(FeedingRecord fr) {
+        return fr.getTime() + "," + fr.getType() + "," + fr.getAmount();
+    }
+    public static String toLine(GrowthData gr) {
+        return gr.getTime() + "," + gr.getWeight() + "," + gr.getHeight();
+    }
+    public static String toLine(MedicationRecord mr) {
+        return mr.getTime() + "," + mr.getName() + "," + mr.getDosage();
+    }
+    public static String toLine(SleepSession sr) {
+        return sr.getRecordTime() + "," + sr.getStartTime() + "," + sr.getEndTime();
+    }
+
+    // Method to get the time a record is sorted and grouped by, whatever type it is.
+    // For sleep sessions, this is the time it was recorded.
+    public static LocalDateTime getTime(Object record) {
+        if (record instanceof DiaperChangeRecord) {
+            return ((DiaperChangeRecord) record).getTime();
+        } else if (record instanceof FeedingRecord) {
+            return ((FeedingRecord) record).getTime();
+        } else if (record instanceof GrowthData) {
+            return ((GrowthData) record).getTime();
+        } else if (record instanceof MedicationRecord) {
+            return ((MedicationRecord) record).getTime();
+        }
+        return ((SleepSession) record).getRecordTime();
+    }
+
+    // Method to convert any record into a line, whatever type it is.
+    public static String toLine(Object record) {
+        if (record instanceof DiaperChangeRecord) {
+            return toLine((DiaperChangeRecord) record);
+        } else if (record instanceof FeedingRecord) {
+            return toLine((FeedingRecord) record);
+        } else if (record instanceof GrowthData) {
+            return toLine((GrowthData) record);
+        } else if (record instanceof MedicationRecord) {
+            return toLine((MedicationRecord) record);
+        }
+        return toLine((SleepSession) record);
+    }
+
+    // Method to convert a time written by LocalDateTime.toString() back into a LocalDateTime.
+    // This is what every record line is full of, and LocalDateTime.parse is slow for it, since it has to
+    // set up a whole parsing context for a general-purpose pattern. Instead, we read the digits straight
+    // out of the text for the exact layouts toString() writes: yyyy-MM-ddTHH:mm, then optionally :ss,
+    // then optionally a fraction of a second. Anything else falls back to LocalDateTime.parse, which
+    // throws DateTimeParseException as usual if the text really is bad.
+    public static LocalDateTime parseTime(String text) {
+        LocalDateTime time = parseTimeFast(text);
+        if (time != null) {
+            return time;
+        }
+        return LocalDateTime.parse(text);
+    }
+
+    // The fast path of parseTime. Returns null for anything it doesn't recognise.
+    private static LocalDateTime parseTimeFast(String text) {
+        int length = text.length();
+        // The separators must be exactly where toString() puts them.
+        if (length < 16 || text.charAt(4) != '-' || text.charAt(7) != '-' || text.charAt(10) != 'T' || text.charAt(13) != ':') {
+            return null;
+        }
+        int year = digits(text, 0, 4);
+        int month = digits(text, 5, 7);
+        int day = digits(text, 8, 10);
+        int hour = digits(text, 11, 13);
+        int minute = digits(text, 14, 16);
+        // Seconds and the fraction are only written when they are not zero.
+        int second = 0;
+        int nano = 0;
+        if (length > 16) {
+            if (length < 19 || text.charAt(16) != ':') {
+                return null;
+            }
+            second = digits(text, 17, 19);
+            if (length > 19) {
+                // Between 1 and 9 digits of fraction, which need scaling up to nanoseconds.
+                if (length == 20 || length > 29 || text.charAt(19) != '.') {
+                    return null;
+                }
+                nano = digits(text, 20, length);
+                for (int i = length - 20; i < 9 && nano >= 0; i++) {
+                    nano *= 10;
+                }
+            }
+        }
+        // Any field that wasn't all digits is negative.
+        if (year < 0 || month < 0 || day < 0 || hour < 0 || minute < 0 || second < 0 || nano < 0) {
+            return null;
+        }
+        // This still checks the ranges (e.g. no 30th of February), just like LocalDateTime.parse does.
+        try {
+            return LocalDateTime.of(year, month, day, hour, minute, second, nano);
+        } catch (DateTimeException e) {
+            return null;
+        }
+    }
+
+    // Helper method to read a run of digits as a number, or -1 if any of them aren't digits.
+    private static int digits(String text, int start, int end) {
+        int value = 0;
+        for (int i = start; i < end; i++) {
+            char c = text.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            value = value * 10 + (c - '0');
+        }
+        return value;
+    }
+
+    // Methods to convert a line back into a record.
+    // These return null for a bad entry, so the caller can skip past it.
+    public static DiaperChangeRecord parseDiaperChange(String text) {
+        String[] line = text.split(",");
+        // Bad entry if not exactly 2 fields.
+        if (line.length != 2) {
+            return null;
+        }
+        // Needs to convert to a localdatetime object, and this can again fail if input is bad.
+        try {
+            return new DiaperChangeRecord(parseTime(line[0]), line[1]);
+        } catch (DateTimeParseException e) {
+            // Invalid time format that could not be parsed.
+            return null;
+        }
+    }
+    public static FeedingRecord parseFeeding(String text) {
+        String[] line = text.split(",");
+        // Bad entry if not exactly 3 fields.
+        if (line.length != 3) {
+            return null;
+        }
+        // Need to convert to both a LocalDateTime object and a double. Type is a standard string.
+        try {
+            return new FeedingRecord(parseTime(line[0]), line[1], Double.parseDouble(line[2]));
+        } catch (DateTimeParseException e) {
+            // Time could not be parsed.
+            return null;
+        } catch (NumberFormatException e) {
+            // Amount could not be parsed.
+            return null;
+        }
+    }
+    public static GrowthData parseGrowth(String text) {
+        String[] line = text.split(",");
+        // Bad entry if not exactly 3 fields.
+        if (line.length != 3) {
+            return null;
+        }
+        // Need to convert to LocalDateTime and two doubles.
+        try {
+            return new GrowthData(parseTime(line[0]), Double.parseDouble(line[1]), Double.parseDouble(line[2]));
+        } catch (DateTimeParseException e) {
+            // Time could not be parsed.
+            return null;
+        } catch (NumberFormatException e) {
+            // Either of the doubles could not be parsed.
+            return null;
+        }
+    }
+    public static MedicationRecord parseMedication(String text) {
+        String[] line = text.split(",");
+        // Bad entry if not exactly 3 fields.
+        if (line.length != 3) {
+            return null;
+        }
+        // Need to convert to LocalDateTime and one double. Name is a normal string.
+        try {
+            return new MedicationRecord(parseTime(line[0]), line[1], Double.parseDouble(line[2]));
+        } catch (DateTimeParseException e) {
+            // Time could not be parsed.
+            return null;
+        } catch (NumberFormatException e) {
+            // Dosage could not be parsed.
+            return null;
+        }
+    }
+    public static SleepSession parseSleep(String text) {
+        String[] line = text.split(",");
+        // Bad entry if not exactly 3 fields.
+        if (line.length != 3) {
+            return null;
+        }
+        // All three are LocalDateTime objects.
+        try {
+            return new SleepSession(parseTime(line[0]), parseTime(line[1]), parseTime(line[2]));
+        } catch (DateTimeParseException e) {
+            // Time could not be parsed.
+            return null;
+        }
+    }
+}
@@ -0,0 +1,366 @@
+package application.Functionality;
+
+// Modules for file handling, file reading/writing, and moving files into place.
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Scanner;
+
+// This class is the append-only journal of record changes for one account.
+// Instead of rewriting every record file whenever a record is added or deleted, the change is
+// appended to the journal as a single line. ChildDatabase replays the journal when it loads, and
+// every so often compacts it into the record files, which is when the journal is trimmed again.
+//
+// Each line is: sequence,operation,type,child,argument
+// - sequence counts up forever, so we know which entries are already in the record files.
+// - operation is + (add a record, argument is the record line) or - (delete, argument is the record line).
+//   Journals from before record files were split into segments have the index of the record to delete instead.
+// - type is the shorthand record type from RecordFormat (dr, fr, gr, mr, sr).
+// - child is the child's name with its length in front (e.g. 5:Ab,cd), since names can have commas in them.
+//   Journals from before this have just the name, which is still read as long as it doesn't look like a length.
+public class RecordJournal {
+    // The directory of the account, which holds all of the files below.
+    private File directory;
+    // The journal itself.
+    private File journalfile;
+    // Holds the sequence number of the last entry that has been compacted into the record files.
+    private File checkpointfile;
+    // Exists only while a compaction is writing its temporary files. See beginCheckpoint().
+    private File pendingcheckpointfile;
+    // Used while trimming the journal, so a crash never leaves a half-written journal behind.
+    private File trimfile;
+    // Entries that have been logged, but not yet appended to the journal file.
+    private StringBuilder pending;
+    private int pendingcount;
+    // The sequence number of the last entry that was logged.
+    private long lastseq;
+    // The sequence number of the last entry that is already in the record files.
+    private long checkpoint;
+    // The number of entries in the journal file that are not in the record files yet.
+    private int size;
+    // When the app keeps everything in a single store (see RecordStore), the journal lives in there instead
+    // of in these files, under the owner's name. Null when using the files.
+    private RecordStore store;
+    private String owner;
+
+    public RecordJournal(File directory) {
+        this.directory = directory;
+        this.journalfile = new File(directory, "journal.dat");
+        this.checkpointfile = new File(directory, "checkpoint.dat");
+        this.pendingcheckpointfile = new File(directory, "checkpoint.dat.tmp");
+        this.trimfile = new File(directory, "journal.trim");
+        this.pending = new StringBuilder();
+        this.pendingcount = 0;
+        // Finish off (or throw away) anything a crash may have left behind, before reading anything.
+        this.recover();
+        // Find out which entries are already in the record files.
+        this.checkpoint = 0;
+        try {
+            Scanner checkpointfileread = new Scanner(this.checkpointfile);
+            if (checkpointfileread.hasNextLong()) {
+                this.checkpoint = checkpointfileread.nextLong();
+            }
+            checkpointfileread.close();
+        } catch (FileNotFoundException e) {
+            // No compaction has ever happened, so nothing is in the record files yet.
+        }
+        this.countEntries();
+    }
+
+    // Constructor for a journal kept in the store rather than in files.
+    // The store applies each change all at once, so there is nothing to recover from.
+    public RecordJournal(RecordStore store, String owner) {
+        this.store = store;
+        this.owner = owner;
+        this.pending = new StringBuilder();
+        this.pendingcount = 0;
+        this.checkpoint = store.readCheckpoint(owner);
+        this.countEntries();
+    }
+
+    // Count the entries we still need, and find the last sequence number handed out.
+    private void countEntries() {
+        this.lastseq = this.checkpoint;
+        this.size = 0;
+        for (String[] entry : this.readEntries()) {
+            this.lastseq = Math.max(this.lastseq, Long.parseLong(entry[0]));
+            this.size++;
+        }
+    }
+
+    // Methods to note a change. These are only kept in memory until flush() is called.
+    public synchronized void logAdd(String child, String type, String line) {
+        this.lastseq++;
+        this.pending.append(toLine(new String[]{String.valueOf(this.lastseq), "+", type, child, line})).append("\n");
+        this.pendingcount++;
+        this.size++;
+    }
+    public synchronized void logDelete(String child, String type, String line) {
+        this.lastseq++;
+        this.pending.append(toLine(new String[]{String.valueOf(this.lastseq), "-", type, child, line})).append("\n");
+        this.pendingcount++;
+        this.size++;
+    }
+
+    // Append every pending entry to the journal file in a single write.
+    // Returns the number of files written, which is 0 if there was nothing to do.
+    public synchronized int flush() {
+        if (this.pending.length() == 0) {
+            return 0;
+        }
+        try {
+            if (this.store != null) {
+                this.store.appendJournal(this.owner, this.pending.toString());
+            } else {
+                // Add on to the end of the file, because that is the whole point of the journal.
+                // This is the moment the changes count as saved, so it is forced on to the disk as the policy says.
+                DurableWriter.append(this.journalfile, this.pending.toString());
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Unable to write data to the journal file.", e);
+        }
+        // Everything pending is on the disk now.
+        this.pending.setLength(0);
+        this.pendingcount = 0;
+        return 1;
+    }
+
+    // The number of entries that have not been compacted into the record files yet.
+    public synchronized int size() {
+        return this.size;
+    }
+
+    // The sequence number of the last entry that was logged.
+    public synchronized long getLastSequence() {
+        return this.lastseq;
+    }
+
+    // Read every entry that is not in the record files yet, in the order they were logged.
+    // Each entry is split into its five fields: sequence, operation, type, child, argument.
+    public ArrayList<String[]> readEntries() {
+        ArrayList<String[]> entries = new ArrayList<>();
+        for (String line : this.readLines()) {
+            String[] entry = parseLine(line);
+            // Bad entry if not exactly 5 fields, or if the operation is unknown.
+            if (entry == null || (!entry[1].equals("+") && !entry[1].equals("-"))) {
+                continue;
+            }
+            // The sequence number must be valid, and skip any entry already in the record files.
+            try {
+                if (Long.parseLong(entry[0]) <= this.checkpoint) {
+                    continue;
+                }
+            } catch (NumberFormatException e) {
+                continue;
+            }
+            entries.add(entry);
+        }
+        return entries;
+    }
+
+    // Helper method to read every line of the journal, from the store or the file.
+    private ArrayList<String> readLines() {
+        if (this.store != null) {
+            return this.store.readJournal(this.owner);
+        }
+        ArrayList<String> lines = new ArrayList<>();
+        try {
+            Scanner journalfileread = new Scanner(this.journalfile);
+            while (journalfileread.hasNextLine()) {
+                lines.add(journalfileread.nextLine());
+            }
+            journalfileread.close();
+        } catch (FileNotFoundException e) {
+            // No journal yet, so there is nothing to replay.
+        }
+        return lines;
+    }
+
+    // Compaction works in three steps, so that a crash at any point can be recovered from:
+    // 1. beginCheckpoint() marks that temporary (.tmp) record files are about to be written.
+    // 2. The compaction writes every record file it needs as a .tmp file next to the real one.
+    // 3. commitCheckpoint() notes the sequence number the .tmp files contain, and moves them into place.
+    // If a crash happens before step 3 finishes its first move, recover() throws the .tmp files away
+    // and the journal is replayed in full. If it happens after, recover() finishes moving them.
+    public void beginCheckpoint() {
+        try {
+            this.directory.mkdirs();
+            new FileWriter(this.pendingcheckpointfile, false).close();
+        } catch (IOException e) {
+            throw new RuntimeException("Unable to write data to the checkpoint file.", e);
+        }
+    }
+    public void commitCheckpoint(long seq, ArrayList<File> tmpfiles) {
+        try {
+            // Write the sequence number, and make sure it is on the disk along with every .tmp file,
+            // since none of them can be moved into place until they are all there.
+            FileWriter checkpointfilewrite = new FileWriter(this.pendingcheckpointfile, false);
+            checkpointfilewrite.write(seq + "\n");
+            checkpointfilewrite.close();
+            ArrayList<File> written = new ArrayList<>(tmpfiles);
+            written.add(this.pendingcheckpointfile);
+            DurableWriter.barrier(written);
+            // Move the sequence number into place. This is the moment the compaction counts.
+            ArrayList<File> moved = new ArrayList<>();
+            moved.add(move(this.pendingcheckpointfile));
+            // Now move every record file the compaction wrote into place.
+            for (File tmpfile : tmpfiles) {
+                moved.add(move(tmpfile));
+            }
+            // Finally make sure the moves are on the disk too, which means the directories they are in.
+            // (The .tmp files are gone by now, so include the files again under their real names.)
+            // This can't be left for later either, since trim() is about to drop the journal entries they replace.
+            for (File file : new ArrayList<>(moved)) {
+                File parent = file.getAbsoluteFile().getParentFile();
+                if (!moved.contains(parent)) {
+                    moved.add(parent);
+                }
+            }
+            DurableWriter.barrier(moved);
+        } catch (IOException e) {
+            throw new RuntimeException("Unable to move the compacted record files into place.", e);
+        }
+        synchronized (this) {
+            this.checkpoint = Math.max(this.checkpoint, seq);
+        }
+    }
+    // Compaction into the store is much simpler: the record changes are all in the batch, so the checkpoint
+    // and trimming the journal just go in the same batch, and the store applies it all at once.
+    public void commitCheckpoint(long seq, PageStore.Batch batch) {
+        this.store.writeCheckpoint(batch, this.owner, seq);
+        this.store.apply(batch);
+        synchronized (this) {
+            this.checkpoint = Math.max(this.checkpoint, seq);
+            // Entries still pending in memory are not in the store, but they still need compacting later.
+            this.size = this.readEntries().size() + this.pendingcount;
+        }
+    }
+    // Throw away the .tmp files of a compaction that failed part of the way through.
+    public void abortCheckpoint(ArrayList<File> tmpfiles) {
+        for (File tmpfile : tmpfiles) {
+            tmpfile.delete();
+        }
+        this.pendingcheckpointfile.delete();
+    }
+
+    // Remove every entry up to and including the given sequence number from the journal file.
+    // They are in the record files by now, so the journal would only be skipping past them anyway.
+    // Returns the number of files written, which is 0 if the journal was already empty.
+    public synchronized int trim(long seq) {
+        if (!this.journalfile.exists() || this.journalfile.length() == 0) {
+            return 0;
+        }
+        try {
+            // Write whatever is left into a new file, and then swap it in.
+            StringBuilder contents = new StringBuilder();
+            int kept = 0;
+            for (String[] entry : this.readEntries()) {
+                if (Long.parseLong(entry[0]) > seq) {
+                    contents.append(toLine(entry)).append("\n");
+                    kept++;
+                }
+            }
+            DurableWriter.replace(this.journalfile, this.trimfile, contents.toString());
+            // Entries still pending in memory are not in the file, but they still need compacting later.
+            this.size = kept + this.pendingcount;
+        } catch (IOException e) {
+            throw new RuntimeException("Unable to trim the journal file.", e);
+        }
+        return 1;
+    }
+
+    // Recover from a crash part of the way through a compaction or trim.
+    private void recover() {
+        // A trim that did not finish means the old journal is still in place, so just discard the new one.
+        this.trimfile.delete();
+        // Either finish or discard the .tmp files, depending on whether the checkpoint was committed.
+        boolean committed = !this.pendingcheckpointfile.exists();
+        ArrayList<File> tmpfiles = new ArrayList<>();
+        findTmpFiles(this.directory, tmpfiles);
+        for (File tmpfile : tmpfiles) {
+            if (committed) {
+                try {
+                    move(tmpfile);
+                } catch (IOException e) {
+                    throw new RuntimeException("Unable to recover the record file " + tmpfile.getName() + ".", e);
+                }
+            } else {
+                tmpfile.delete();
+            }
+        }
+        // The journal may end with half an entry if the app stopped mid-write. Cut it off,
+        // otherwise the next entry appended would be glued on to the end of it.
+        if (this.journalfile.exists()) {
+            try {
+                RandomAccessFile journalfileraw = new RandomAccessFile(this.journalfile, "rw");
+                long length = journalfileraw.length();
+                while (length > 0) {
+                    journalfileraw.seek(length - 1);
+                    if (journalfileraw.read() == '\n') {
+                        break;
+                    }
+                    length--;
+                }
+                journalfileraw.setLength(length);
+                journalfileraw.close();
+            } catch (IOException e) {
+                throw new RuntimeException("Unable to recover the journal file.", e);
+            }
+        }
+    }
+
+    // Helper method to find the .tmp files in the account directory, and the directories of its children.
+    private static void findTmpFiles(File directory, ArrayList<File> tmpfiles) {
+        File[] list = directory.listFiles();
+        if (list == null) {
+            return;
+        }
+        for (File file : list) {
+            if (file.isDirectory()) {
+                findTmpFiles(file, tmpfiles);
+            } else if (file.getName().endsWith(".tmp")) {
+                tmpfiles.add(file);
+            }
+        }
+    }
+
+    // Helper method to turn an entry's five fields back into a line, with the length of the child's name in front of it.
+    private static String toLine(String[] entry) {
+        return entry[0] + "," + entry[1] + "," + entry[2] + "," + entry[3].length() + ":" + entry[3] + "," + entry[4];
+    }
+
+    // Helper method to split a line into its five fields, or return null if it doesn't have them all.
+    private static String[] parseLine(String line) {
+        // The sequence, operation and type never have commas in them, and the argument comes after the child.
+        String[] fields = line.split(",", 4);
+        if (fields.length != 4) {
+            return null;
+        }
+        String rest = fields[3];
+        // Read the length of the name, and then exactly that much of the rest as the name, whatever is in it.
+        int colon = rest.indexOf(':');
+        if (colon > 0 && colon <= 9 && rest.substring(0, colon).chars().allMatch(Character::isDigit)) {
+            int end = colon + 1 + Integer.parseInt(rest.substring(0, colon));
+            if (end < rest.length() && rest.charAt(end) == ',') {
+                return new String[]{fields[0], fields[1], fields[2], rest.substring(colon + 1, end), rest.substring(end + 1)};
+            }
+        }
+        // An older line, where the name is everything up to the next comma.
+        String[] childargument = rest.split(",", 2);
+        if (childargument.length != 2) {
+            return null;
+        }
+        return new String[]{fields[0], fields[1], fields[2], childargument[0], childargument[1]};
+    }
+
+    // Helper method to move a .tmp file over the real file it was written for, returning the real file.
+    private static File move(File tmpfile) throws IOException {
+        String path = tmpfile.getPath();
+        File realfile = new File(path.substring(0, path.length() - ".tmp".length()));
+        DurableWriter.move(tmpfile, realfile);
+        return realfile;
+    }
+}
@@ -0,0 +1,324 @@
+package application.Functionality;
+
+// Modules for reading and writing rollup files, and working out which hour, day, week or month a time falls in.
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.CRC32;
+
+// This class contains the methods for rollups, which are the totals of one type of a child's records for each
+// hour, day, week and month: how many records there are, and the sum, smallest and largest of their amount,
+// counted the same way as DailyAggregates (so sleep is the minutes slept in each period, split up where needed).
+// A chart of a year only needs 52 weekly totals, rather than every record from that year.
+//
+// ChildDatabase keeps a rollup file for each level next to the segments of each type (e.g. fr/week.rollup),
+// which it writes along with the segments whenever they are compacted. Only the periods around the segments
+// that changed are worked out again, using the records' index by time (see RecordColumns), apart from sleep,
+// where a session's minutes can fall outside the segment it is in, so those are always worked out in full.
+// Each rollup file notes the segments it was worked out from, by name and a checksum of their contents, so one
+// that is missing or no longer matches its segments (e.g. from a crash, or an older version of the app) gets rebuilt.
+// Their lengths wouldn't be enough, since changing a record's amount can leave its segment the same length.
+//
+// Rollup files are laid out like record files (see RecordFile): the magic number "BTRU", a version byte,
+// the stamp of the segments, the number of periods, and then their columns compressed by RecordCodec.
+// Like AppStorage, it only contains static methods, so objects must not be created.
+public class RecordRollups {
+    // The levels of rollup, from the shortest periods to the longest.
+    public static final String HOUR = "hour";
+    public static final String DAY = "day";
+    public static final String WEEK = "week";
+    public static final String MONTH = "month";
+    public static final String[] LEVELS = {HOUR, DAY, WEEK, MONTH};
+    // The magic number at the start of every rollup file ("BTRU" in ASCII).
+    private static final int MAGIC = 0x42545255;
+    // The version of the rollup format. Increase this if the layout, or the way totals are counted, ever changes.
+    private static final byte VERSION = 1;
+    private static final long SECONDS_PER_DAY = 86400;
+
+    // Make the constructor private and empty so objects cannot be created.
+    private RecordRollups() {}
+
+    // The totals for one period.
+    public static class Bucket {
+        private final long start;
+        private int count;
+        private double sum;
+        private double min;
+        private double max;
+
+        private Bucket(long start) {
+            this.start = start;
+            this.count = 0;
+            this.sum = 0;
+            this.min = Double.NaN;
+            this.max = Double.NaN;
+        }
+
+        public LocalDateTime getStart() {
+            return LocalDateTime.ofEpochSecond(this.start, 0, ZoneOffset.UTC);
+        }
+        public int getCount() {
+            return this.count;
+        }
+        public double getSum() {
+            return this.sum;
+        }
+        public double getMin() {
+            return this.min;
+        }
+        public double getMax() {
+            return this.max;
+        }
+
+        private void add(double amount) {
+            this.count++;
+            this.sum += amount;
+            this.min = this.count == 1 ? amount : Math.min(this.min, amount);
+            this.max = this.count == 1 ? amount : Math.max(this.max, amount);
+        }
+    }
+
+    // Method to choose the level of rollup for a chart from (inclusive) up to (exclusive) the given times,
+    // so it has a sensible number of points. Returns null for a few days or less, where the records themselves
+    // are few enough to use as they are.
+    public static String level(LocalDateTime from, LocalDateTime to) {
+        long days = (to.toEpochSecond(ZoneOffset.UTC) - from.toEpochSecond(ZoneOffset.UTC)) / SECONDS_PER_DAY;
+        if (days <= 3) {
+            return null;
+        } else if (days <= 92) {
+            return DAY;
+        } else if (days <= 730) {
+            return WEEK;
+        }
+        return MONTH;
+    }
+
+    // Method to get the start of the period a time (in seconds since 1970) falls in. Weeks start on Monday.
+    public static long start(long seconds, String level) {
+        long day = Math.floorDiv(seconds, SECONDS_PER_DAY);
+        switch (level) {
+            case HOUR:
+                return Math.floorDiv(seconds, 3600) * 3600;
+            case DAY:
+                return day * SECONDS_PER_DAY;
+            case WEEK:
+                // 1970-01-01 was a Thursday, 3 days after the Monday that week started on.
+                return (Math.floorDiv(day + 3, 7) * 7 - 3) * SECONDS_PER_DAY;
+            default:
+                return LocalDate.ofEpochDay(day).withDayOfMonth(1).toEpochDay() * SECONDS_PER_DAY;
+        }
+    }
+
+    // Method to get the start of the period after the one starting at the given time.
+    public static long next(long start, String level) {
+        switch (level) {
+            case HOUR:
+                return start + 3600;
+            case DAY:
+                return start + SECONDS_PER_DAY;
+            case WEEK:
+                return start + 7 * SECONDS_PER_DAY;
+            default:
+                return LocalDate.ofEpochDay(start / SECONDS_PER_DAY).plusMonths(1).toEpochDay() * SECONDS_PER_DAY;
+        }
+    }
+
+    // Method to work out the rollup of every record.
+    public static TreeMap<Long, Bucket> compute(RecordColumns<?> records, String level) {
+        TreeMap<Long, Bucket> buckets = new TreeMap<>();
+        if (records.isSleep()) {
+            for (int i = 0; i < records.size(); i++) {
+                addSpan(buckets, level, records.getSeconds(i, 1), records.getSeconds(i, 2));
+            }
+        } else {
+            addRange(buckets, level, records, Long.MIN_VALUE, Long.MAX_VALUE);
+        }
+        return buckets;
+    }
+
+    // Method to bring a rollup up to date after the records in some segments (see RecordSegments) have changed.
+    // Every period that overlaps one of them is worked out again from the records, and the rest are kept.
+    // This can't be used for sleep (see above).
+    public static void update(TreeMap<Long, Bucket> buckets, RecordColumns<?> records, String level, Collection<String> segments) {
+        for (String segment : segments) {
+            // Widen the segment out to whole periods, since a week can start in one month and end in the next.
+            long from = start(RecordSegments.start(segment).toEpochSecond(ZoneOffset.UTC), level);
+            long to = next(start(RecordSegments.end(segment).toEpochSecond(ZoneOffset.UTC) - 1, level), level);
+            buckets.subMap(from, to).clear();
+            addRange(buckets, level, records, from, to);
+        }
+    }
+
+    // Method to get the periods of a rollup from (inclusive) up to (exclusive) the given times, oldest first.
+    // Periods without any records are left out. Either time can be null for no limit.
+    public static ArrayList<Bucket> slice(TreeMap<Long, Bucket> buckets, String level, LocalDateTime from, LocalDateTime to) {
+        long start = from == null ? Long.MIN_VALUE : start(from.toEpochSecond(ZoneOffset.UTC), level);
+        long end = to == null ? Long.MAX_VALUE : to.toEpochSecond(ZoneOffset.UTC);
+        return new ArrayList<>(buckets.subMap(start, end).values());
+    }
+
+    // Method to get the rollup file of a level, in the directory holding the segments of a type.
+    public static File file(File directory, String level) {
+        return new File(directory, level + ".rollup");
+    }
+
+    // Method to work out the checksum of each segment currently in a directory, by name.
+    public static TreeMap<String, Long> checksums(File directory) {
+        TreeMap<String, Long> checksums = new TreeMap<>();
+        for (String segment : RecordSegments.list(directory)) {
+            checksums.put(segment, checksum(RecordSegments.file(directory, segment)));
+        }
+        return checksums;
+    }
+    // Method to work out the stamp of the segments currently in a directory, to check a rollup against.
+    public static long stamp(File directory) {
+        return stamp(checksums(directory));
+    }
+    // The stamp is a hash of each segment's name and checksum, so any change to any of them gives a new stamp.
+    public static long stamp(TreeMap<String, Long> checksums) {
+        long hash = 17;
+        for (Map.Entry<String, Long> entry : checksums.entrySet()) {
+            hash = hash * 31 + entry.getKey().hashCode();
+            hash = hash * 31 + entry.getValue();
+        }
+        return hash;
+    }
+
+    // Method to work out the checksum (CRC32) of everything in a file, e.g. a segment.
+    // Segments are compressed, so reading them through is still far quicker than reading their records.
+    public static long checksum(File file) {
+        CRC32 crc = new CRC32();
+        try {
+            InputStream fileread = new FileInputStream(file);
+            try {
+                byte[] buffer = new byte[65536];
+                int read;
+                while ((read = fileread.read(buffer)) > 0) {
+                    crc.update(buffer, 0, read);
+                }
+            } finally {
+                fileread.close();
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Unable to read data from file " + file.getPath(), e);
+        }
+        return crc.getValue();
+    }
+
+    // Method to read a rollup file, or null if it is missing, unreadable, in an older format, or doesn't have the given stamp.
+    public static TreeMap<Long, Bucket> read(File file, long stamp) {
+        if (!file.exists()) {
+            return null;
+        }
+        try {
+            DataInputStream fileread = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+            try {
+                if (fileread.readInt() != MAGIC || fileread.readByte() != VERSION || fileread.readLong() != stamp) {
+                    return null;
+                }
+                int count = fileread.readInt();
+                byte[] block = new byte[fileread.readInt()];
+                fileread.readFully(block);
+                RecordCodec.BitReader blockread = new RecordCodec.BitReader(block);
+                long[] starts = RecordCodec.readTimes(blockread, count);
+                double[] counts = RecordCodec.readDoubles(blockread, count);
+                double[] sums = RecordCodec.readDoubles(blockread, count);
+                double[] mins = RecordCodec.readDoubles(blockread, count);
+                double[] maxes = RecordCodec.readDoubles(blockread, count);
+                TreeMap<Long, Bucket> buckets = new TreeMap<>();
+                for (int i = 0; i < count; i++) {
+                    Bucket bucket = new Bucket(starts[i]);
+                    bucket.count = (int) counts[i];
+                    bucket.sum = sums[i];
+                    bucket.min = mins[i];
+                    bucket.max = maxes[i];
+                    buckets.put(starts[i], bucket);
+                }
+                return buckets;
+            } finally {
+                fileread.close();
+            }
+        } catch (IOException e) {
+            // Treat it like any other rollup that is out of date, so it gets rebuilt.
+            return null;
+        }
+    }
+
+    // Method to write a rollup file, with the stamp of the segments it was worked out from.
+    // This throws IOException rather than crashing, so ChildDatabase can clean up after a failed compaction.
+    public static void write(File file, long stamp, TreeMap<Long, Bucket> buckets) throws IOException {
+        int count = buckets.size();
+        long[] starts = new long[count];
+        double[] counts = new double[count];
+        double[] sums = new double[count];
+        double[] mins = new double[count];
+        double[] maxes = new double[count];
+        int i = 0;
+        for (Bucket bucket : buckets.values()) {
+            starts[i] = bucket.start;
+            counts[i] = bucket.count;
+            sums[i] = bucket.sum;
+            mins[i] = bucket.min;
+            maxes[i] = bucket.max;
+            i++;
+        }
+        RecordCodec.BitWriter block = new RecordCodec.BitWriter();
+        RecordCodec.writeTimes(block, starts);
+        RecordCodec.writeDoubles(block, counts);
+        RecordCodec.writeDoubles(block, sums);
+        RecordCodec.writeDoubles(block, mins);
+        RecordCodec.writeDoubles(block, maxes);
+        byte[] blockbytes = block.toByteArray();
+        DataOutputStream filewrite = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file, false)));
+        try {
+            filewrite.writeInt(MAGIC);
+            filewrite.writeByte(VERSION);
+            filewrite.writeLong(stamp);
+            filewrite.writeInt(count);
+            filewrite.writeInt(blockbytes.length);
+            filewrite.write(blockbytes);
+        } finally {
+            filewrite.close();
+        }
+    }
+
+    // Helper method to add the records from (inclusive) up to (exclusive) the given times, using their index by time.
+    private static void addRange(TreeMap<Long, Bucket> buckets, String level, RecordColumns<?> records, long from, long to) {
+        int end = records.position(to);
+        Bucket bucket = null;
+        for (int position = records.position(from); position < end; position++) {
+            int index = records.getTimeOrderIndex(position);
+            long start = start(records.getSeconds(index, 0), level);
+            // The records are in order of time, so they fill one period at a time.
+            if (bucket == null || bucket.start != start) {
+                bucket = buckets.computeIfAbsent(start, Bucket::new);
+            }
+            bucket.add(records.getAmount(index));
+        }
+    }
+
+    // Helper method to add a sleep from start to end, split up into the periods it falls in, as minutes.
+    // A sleep that ends before it starts is left out.
+    private static void addSpan(TreeMap<Long, Bucket> buckets, String level, long start, long end) {
+        long period = start(start, level);
+        while (start < end) {
+            long until = Math.min(end, next(period, level));
+            buckets.computeIfAbsent(period, Bucket::new).add((until - start) / 60.0);
+            start = until;
+            period = next(period, level);
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package application.Functionality;
+
+// Modules for file handling, and working out which period a time falls in.
+import java.io.File;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.TreeMap;
+
+// This class contains the methods for splitting each child's records into segments by time.
+// Instead of one record file per type (e.g. fr.dat), each type has a directory with one record file
+// per month (e.g. fr/2024-03.dat), so adding a record only ever rewrites the file for its own month.
+// Months before the current one are normally never written again, and reading a time window only
+// needs the files that overlap it.
+//
+// Each segment is named after the month it starts in. The number of months in a segment can be set
+// with the ce201application.segment.months property (default 1), in which case it is written after
+// the start (e.g. fr/2024-01+3.dat), so a segment always says exactly which times it holds.
+// Segments written with a different setting get rewritten by ChildDatabase the next time they are loaded.
+// Like AppStorage, it only contains static methods, so objects must not be created.
+public class RecordSegments {
+    // How many months go in each segment, counting from January.
+    private static final int MONTHS = Math.max(1, Math.min(12, Integer.getInteger("ce201application.segment.months", 1)));
+
+    // Make the constructor private and empty so objects cannot be created.
+    private RecordSegments() {}
+
+    // Method to get the name of the segment a time belongs in.
+    public static String segment(LocalDateTime time) {
+        int month = ((time.getMonthValue() - 1) / MONTHS) * MONTHS + 1;
+        String name = String.format("%04d-%02d", time.getYear(), month);
+        if (MONTHS > 1) {
+            name += "+" + MONTHS;
+        }
+        return name;
+    }
+
+    // Methods to get the first time in a segment, and the first time after it.
+    public static LocalDateTime start(String segment) {
+        return LocalDateTime.of(Integer.parseInt(segment.substring(0, 4)), Integer.parseInt(segment.substring(5, 7)), 1, 0, 0);
+    }
+    public static LocalDateTime end(String segment) {
+        int plus = segment.indexOf('+');
+        int months = plus < 0 ? 1 : Integer.parseInt(segment.substring(plus + 1));
+        return start(segment).plusMonths(months);
+    }
+
+    // Check whether a segment was named with the current number of months, so new records would go in it.
+    public static boolean isCurrent(String segment) {
+        return segment(start(segment)).equals(segment);
+    }
+
+    // Check whether a segment could hold any times from (inclusive) up to (exclusive) the given times.
+    public static boolean overlaps(String segment, LocalDateTime from, LocalDateTime to) {
+        return start(segment).isBefore(to) && end(segment).isAfter(from);
+    }
+
+    // Method to list the segments in a directory, oldest first. Anything that isn't a segment file is ignored.
+    public static ArrayList<String> list(File directory) {
+        ArrayList<String> segments = new ArrayList<>();
+        String[] names = directory.list();
+        if (names == null) {
+            return segments;
+        }
+        for (String name : names) {
+            if (name.matches("\\d{4}-\\d{2}(\\+\\d+)?\\.dat")) {
+                segments.add(name.substring(0, name.length() - ".dat".length()));
+            }
+        }
+        Collections.sort(segments);
+        return segments;
+    }
+
+    // Method to get the file for a segment in a directory.
+    public static File file(File directory, String segment) {
+        return new File(directory, segment + ".dat");
+    }
+
+    // Method to split a list of records into their segments, oldest first.
+    // The records keep the same order within each segment.
+    // Records kept as columns (see RecordColumns) are split into columns too, without making any records.
+    @SuppressWarnings("unchecked")
+    public static TreeMap<String, List<Object>> partition(List<?> records) {
+        TreeMap<String, List<Object>> segments = new TreeMap<>();
+        if (records instanceof RecordColumns) {
+            RecordColumns<Object> columns = (RecordColumns<Object>) records;
+            for (int i = 0; i < columns.size(); i++) {
+                // The first time column is always the one RecordFormat.getTime uses.
+                String segment = segment(columns.getTime(i, 0));
+                ((RecordColumns<Object>) segments.computeIfAbsent(segment, key -> columns.newEmpty())).add(columns, i);
+            }
+            return segments;
+        }
+        for (Object record : records) {
+            segments.computeIfAbsent(segment(RecordFormat.getTime(record)), segment -> new ArrayList<>()).add(record);
+        }
+        return segments;
+    }
+}
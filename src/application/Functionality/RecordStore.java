@@ -0,0 +1,338 @@
+package application.Functionality;
+
+import application.*;
+
+// Modules for encoding keys and values as bytes, and the data formats they hold.
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// This class keeps all of our data (accounts, children and all five record types) in a single PageStore file,
+// instead of a file per account list and a directory with five files per child.
+// It is optional: it is only used when the app is started with -Dce201application.storage=store.
+// ChildDatabase and AccountDatabase use it in place of their files when it is turned on, so nothing else
+// needs to know which one is being used. The first time an account is opened, its files are copied in.
+//
+// Each key is a list of parts, each followed by a zero byte, so the keys of one owner (or child, or type)
+// all sit next to each other and can be read as a range:
+// - accounts/                                     -> marks that the accounts have been copied in
+// - account/<username>/                           -> full name, password hash, email, phone
+// - owner/<owner>/                                -> marks that the owner's children have been copied in
+// - child/<owner>/<position>                      -> child name (kept in the order they were added)
+// - record/<owner>/<child>/<type>/<time><position> -> the record (so they are sorted by time)
+// - journal/<owner>/<sequence>                    -> a journal entry, see RecordJournal
+// - checkpoint/<owner>/                           -> the sequence number of the last compacted journal entry
+public class RecordStore {
+    // The single store for the whole app, once it has been opened.
+    private static RecordStore instance;
+
+    // The file everything is kept in.
+    private PageStore store;
+
+    private RecordStore(PageStore store) {
+        this.store = store;
+    }
+
+    // Get the store, opening it the first time. Returns null if the app is using separate files instead.
+    public static synchronized RecordStore get() {
+        if (!System.getProperty("ce201application.storage", "files").equalsIgnoreCase("store")) {
+            return null;
+        }
+        if (instance == null) {
+            instance = new RecordStore(new PageStore(new File(AppStorage.getDirectory() + "store.db")));
+        }
+        return instance;
+    }
+
+    // Methods for the accounts.
+    // Whether the accounts have been copied into the store yet (even if there are none).
+    public boolean hasAccounts() {
+        return this.store.get(key("accounts")) != null;
+    }
+    public ArrayList<Account> readAccounts() {
+        ArrayList<Account> accounts = new ArrayList<>();
+        byte[] prefix = key("account");
+        for (byte[][] entry : this.store.scan(prefix, end(prefix))) {
+            try {
+                DataInputStream valueread = new DataInputStream(new ByteArrayInputStream(entry[1]));
+                String username = new String(entry[0], prefix.length, entry[0].length - prefix.length - 1, StandardCharsets.UTF_8);
+                Account account = new Account(username, valueread.readUTF(), valueread.readUTF());
+                account.setEmail(valueread.readUTF());
+                account.setPhone(valueread.readUTF());
+                accounts.add(account);
+            } catch (IOException e) {
+                throw new RuntimeException("Unable to read the account " + new String(entry[0], StandardCharsets.UTF_8) + " from the store.", e);
+            }
+        }
+        return accounts;
+    }
+    // Replace every account in the store with these.
+    public void writeAccounts(List<Account> accounts) {
+        PageStore.Batch batch = new PageStore.Batch();
+        byte[] prefix = key("account");
+        batch.deleteRange(prefix, end(prefix));
+        for (Account account : accounts) {
+            ByteArrayOutputStream value = new ByteArrayOutputStream();
+            try {
+                DataOutputStream valuewrite = new DataOutputStream(value);
+                valuewrite.writeUTF(account.getFullname());
+                valuewrite.writeUTF(account.getPasswordhash());
+                valuewrite.writeUTF(account.getEmail());
+                valuewrite.writeUTF(account.getPhone());
+            } catch (IOException e) {
+                // Writing to memory can't fail.
+                throw new RuntimeException(e);
+            }
+            batch.put(key("account", account.getUsername()), value.toByteArray());
+        }
+        batch.put(key("accounts"), new byte[0]);
+        this.store.apply(batch);
+    }
+
+    // Methods for the children of an account.
+    // Whether the owner's children have been copied into the store yet (even if there are none).
+    public boolean hasOwner(String owner) {
+        return this.store.get(key("owner", owner)) != null;
+    }
+    public ArrayList<String> readChildren(String owner) {
+        ArrayList<String> names = new ArrayList<>();
+        byte[] prefix = key("child", owner);
+        for (byte[][] entry : this.store.scan(prefix, end(prefix))) {
+            names.add(new String(entry[1], StandardCharsets.UTF_8));
+        }
+        return names;
+    }
+    // Add replacing the owner's list of children on to a batch.
+    public void writeChildren(PageStore.Batch batch, String owner, List<String> names) {
+        byte[] prefix = key("child", owner);
+        batch.deleteRange(prefix, end(prefix));
+        for (int i = 0; i < names.size(); i++) {
+            batch.put(concat(prefix, ByteBuffer.allocate(4).putInt(i).array()), names.get(i).getBytes(StandardCharsets.UTF_8));
+        }
+        batch.put(key("owner", owner), new byte[0]);
+    }
+    // Remove every record of a child, once the child itself has been removed.
+    public void deleteRecords(String owner, String child) {
+        PageStore.Batch batch = new PageStore.Batch();
+        byte[] prefix = key("record", owner, child);
+        batch.deleteRange(prefix, end(prefix));
+        this.store.apply(batch);
+    }
+
+    // Methods to read every record of a type for a child, in the order they were added.
+    public ArrayList<DiaperChangeRecord> readDiaperChanges(String owner, String child) {
+        return this.readRecords(owner, child, RecordFormat.DIAPERCHANGE, null, null);
+    }
+    public ArrayList<FeedingRecord> readFeedings(String owner, String child) {
+        return this.readRecords(owner, child, RecordFormat.FEEDING, null, null);
+    }
+    public ArrayList<GrowthData> readGrowths(String owner, String child) {
+        return this.readRecords(owner, child, RecordFormat.GROWTH, null, null);
+    }
+    public ArrayList<MedicationRecord> readMedications(String owner, String child) {
+        return this.readRecords(owner, child, RecordFormat.MEDICATION, null, null);
+    }
+    public ArrayList<SleepSession> readSleeps(String owner, String child) {
+        return this.readRecords(owner, child, RecordFormat.SLEEP, null, null);
+    }
+    // Methods to read only the records from (inclusive) up to (exclusive) the given times, sorted by time.
+    // These only read the part of the store that holds those times, rather than every record.
+    public ArrayList<DiaperChangeRecord> readDiaperChanges(String owner, String child, LocalDateTime from, LocalDateTime to) {
+        return this.readRecords(owner, child, RecordFormat.DIAPERCHANGE, from, to);
+    }
+    public ArrayList<FeedingRecord> readFeedings(String owner, String child, LocalDateTime from, LocalDateTime to) {
+        return this.readRecords(owner, child, RecordFormat.FEEDING, from, to);
+    }
+    public ArrayList<GrowthData> readGrowths(String owner, String child, LocalDateTime from, LocalDateTime to) {
+        return this.readRecords(owner, child, RecordFormat.GROWTH, from, to);
+    }
+    public ArrayList<MedicationRecord> readMedications(String owner, String child, LocalDateTime from, LocalDateTime to) {
+        return this.readRecords(owner, child, RecordFormat.MEDICATION, from, to);
+    }
+    public ArrayList<SleepSession> readSleeps(String owner, String child, LocalDateTime from, LocalDateTime to) {
+        return this.readRecords(owner, child, RecordFormat.SLEEP, from, to);
+    }
+
+    // Add replacing every record of a type for a child on to a batch.
+    public void writeRecords(PageStore.Batch batch, String owner, String child, String type, List<?> records) {
+        byte[] prefix = key("record", owner, child, type);
+        batch.deleteRange(prefix, end(prefix));
+        for (int i = 0; i < records.size(); i++) {
+            Object record = records.get(i);
+            // The time comes first so the records are sorted by it, then the position so they can be put back in order.
+            ByteBuffer suffix = ByteBuffer.allocate(12);
+            suffix.putLong(timeKey(RecordFormat.getTime(record)));
+            suffix.putInt(i);
+            batch.put(concat(prefix, suffix.array()), encode(record));
+        }
+    }
+
+    // Methods for the journal of an account. See RecordJournal.
+    // Add journal lines (each starting with its sequence number) to the store.
+    public void appendJournal(String owner, String lines) {
+        PageStore.Batch batch = new PageStore.Batch();
+        byte[] prefix = key("journal", owner);
+        for (String line : lines.split("\n")) {
+            if (line.isEmpty()) {
+                continue;
+            }
+            long seq = Long.parseLong(line.substring(0, line.indexOf(',')));
+            batch.put(concat(prefix, ByteBuffer.allocate(8).putLong(seq).array()), line.getBytes(StandardCharsets.UTF_8));
+        }
+        this.store.apply(batch);
+    }
+    // Read every journal line in the store for the owner, in order.
+    public ArrayList<String> readJournal(String owner) {
+        ArrayList<String> lines = new ArrayList<>();
+        byte[] prefix = key("journal", owner);
+        for (byte[][] entry : this.store.scan(prefix, end(prefix))) {
+            lines.add(new String(entry[1], StandardCharsets.UTF_8));
+        }
+        return lines;
+    }
+    public long readCheckpoint(String owner) {
+        byte[] value = this.store.get(key("checkpoint", owner));
+        return value == null ? 0 : ByteBuffer.wrap(value).getLong();
+    }
+    // Add noting the checkpoint, and removing every journal entry up to it, on to a batch.
+    public void writeCheckpoint(PageStore.Batch batch, String owner, long seq) {
+        byte[] prefix = key("journal", owner);
+        batch.deleteRange(prefix, concat(prefix, ByteBuffer.allocate(8).putLong(seq + 1).array()));
+        batch.put(key("checkpoint", owner), ByteBuffer.allocate(8).putLong(seq).array());
+    }
+
+    // Apply a batch of changes built up with the methods above, all together.
+    public void apply(PageStore.Batch batch) {
+        this.store.apply(batch);
+    }
+
+    // Method to read the records of a type for a child. With no times, every record is read
+    // and put back in the order they were added, otherwise only those in the range, sorted by time.
+    // Either time can be left out (null) on its own, to leave that end of the range open.
+    @SuppressWarnings("unchecked")
+    public <T> ArrayList<T> readRecords(String owner, String child, String type, LocalDateTime from, LocalDateTime to) {
+        byte[] prefix = key("record", owner, child, type);
+        ArrayList<byte[][]> entries;
+        if (from == null && to == null) {
+            entries = this.store.scan(prefix, end(prefix));
+            // The position is the last 4 bytes of the key.
+            entries.sort((a, b) -> Integer.compare(position(a[0]), position(b[0])));
+        } else {
+            // The time comes straight after the prefix in each key, so an open end is just the first or last key with it.
+            byte[] start = from == null ? prefix : concat(prefix, ByteBuffer.allocate(8).putLong(timeKey(from)).array());
+            byte[] end = to == null ? end(prefix) : concat(prefix, ByteBuffer.allocate(8).putLong(timeKey(to)).array());
+            entries = this.store.scan(start, end);
+        }
+        ArrayList<T> records = new ArrayList<>(entries.size());
+        for (byte[][] entry : entries) {
+            try {
+                records.add((T) decode(type, entry[1]));
+            } catch (IOException e) {
+                throw new RuntimeException("Unable to read a record of child " + child + " from the store.", e);
+            }
+        }
+        return records;
+    }
+
+    // Helper method to encode a record as bytes. Times are epoch seconds, like in RecordFile.
+    private static byte[] encode(Object record) {
+        ByteArrayOutputStream value = new ByteArrayOutputStream();
+        try {
+            DataOutputStream valuewrite = new DataOutputStream(value);
+            if (record instanceof DiaperChangeRecord) {
+                DiaperChangeRecord dr = (DiaperChangeRecord) record;
+                valuewrite.writeLong(dr.getTime().toEpochSecond(ZoneOffset.UTC));
+                valuewrite.writeUTF(dr.getType());
+            } else if (record instanceof FeedingRecord) {
+                FeedingRecord fr = (FeedingRecord) record;
+                valuewrite.writeLong(fr.getTime().toEpochSecond(ZoneOffset.UTC));
+                valuewrite.writeUTF(fr.getType());
+                valuewrite.writeDouble(fr.getAmount());
+            } else if (record instanceof GrowthData) {
+                GrowthData gr = (GrowthData) record;
+                valuewrite.writeLong(gr.getTime().toEpochSecond(ZoneOffset.UTC));
+                valuewrite.writeDouble(gr.getWeight());
+                valuewrite.writeDouble(gr.getHeight());
+            } else if (record instanceof MedicationRecord) {
+                MedicationRecord mr = (MedicationRecord) record;
+                valuewrite.writeLong(mr.getTime().toEpochSecond(ZoneOffset.UTC));
+                valuewrite.writeUTF(mr.getName());
+                valuewrite.writeDouble(mr.getDosage());
+            } else {
+                SleepSession sr = (SleepSession) record;
+                valuewrite.writeLong(sr.getRecordTime().toEpochSecond(ZoneOffset.UTC));
+                valuewrite.writeLong(sr.getStartTime().toEpochSecond(ZoneOffset.UTC));
+                valuewrite.writeLong(sr.getEndTime().toEpochSecond(ZoneOffset.UTC));
+            }
+        } catch (IOException e) {
+            // Writing to memory can't fail.
+            throw new RuntimeException(e);
+        }
+        return value.toByteArray();
+    }
+
+    // Helper method to decode a record of the given type from its bytes.
+    private static Object decode(String type, byte[] value) throws IOException {
+        DataInputStream valueread = new DataInputStream(new ByteArrayInputStream(value));
+        LocalDateTime time = LocalDateTime.ofEpochSecond(valueread.readLong(), 0, ZoneOffset.UTC);
+        switch (type) {
+            case RecordFormat.DIAPERCHANGE:
+                return new DiaperChangeRecord(time, valueread.readUTF());
+            case RecordFormat.FEEDING:
+                return new FeedingRecord(time, valueread.readUTF(), valueread.readDouble());
+            case RecordFormat.GROWTH:
+                return new GrowthData(time, valueread.readDouble(), valueread.readDouble());
+            case RecordFormat.MEDICATION:
+                return new MedicationRecord(time, valueread.readUTF(), valueread.readDouble());
+            default:
+                LocalDateTime start = LocalDateTime.ofEpochSecond(valueread.readLong(), 0, ZoneOffset.UTC);
+                LocalDateTime end = LocalDateTime.ofEpochSecond(valueread.readLong(), 0, ZoneOffset.UTC);
+                return new SleepSession(time, start, end);
+        }
+    }
+
+    // Helper method to turn a time into 8 bytes that sort the same way as the times do.
+    // Flipping the top bit puts times before 1970 (negative numbers) before the rest.
+    private static long timeKey(LocalDateTime time) {
+        return time.toEpochSecond(ZoneOffset.UTC) ^ Long.MIN_VALUE;
+    }
+
+    // Helper method to get the position of a record from the end of its key.
+    private static int position(byte[] key) {
+        return ByteBuffer.wrap(key, key.length - 4, 4).getInt();
+    }
+
+    // Helper method to build a key from its parts, each followed by a zero byte.
+    private static byte[] key(String... parts) {
+        ByteArrayOutputStream key = new ByteArrayOutputStream();
+        for (String part : parts) {
+            key.writeBytes(part.getBytes(StandardCharsets.UTF_8));
+            key.write(0);
+        }
+        return key.toByteArray();
+    }
+
+    // Helper method to get the key just after every key starting with a prefix (which always ends in a zero byte).
+    private static byte[] end(byte[] prefix) {
+        byte[] end = Arrays.copyOf(prefix, prefix.length);
+        end[end.length - 1] = 1;
+        return end;
+    }
+
+    // Helper method to join two byte arrays.
+    private static byte[] concat(byte[] a, byte[] b) {
+        byte[] joined = Arrays.copyOf(a, a.length + b.length);
+        System.arraycopy(b, 0, joined, a.length, b.length);
+        return joined;
+    }
+}
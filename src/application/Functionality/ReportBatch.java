@@ -0,0 +1,105 @@
+package application.Functionality;
+
+import application.*;
+
+// Modules for running the reports in parallel, and keeping track of how many are done.
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+
+// This class generates every type of report for every child of one or more accounts at once, e.g. at the end
+// of the day at a daycare. The reports are independent of each other (each has its own PDDocument and graph,
+// see ReportGenerator), so they are made in parallel on a fork-join pool, one task per report.
+// Like AppStorage, it only contains static methods, so objects must not be created.
+public class ReportBatch {
+    // The types of report made for each child, the same as can be picked on the child's screen.
+    public static final String[] TYPES = {"Feeding", "Sleep", "Medication", "Diaper Change", "Growth Record"};
+    // The reports are made on these threads, one per core. They don't keep the app running on their own.
+    private static final ForkJoinPool pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+
+    // Make the constructor private and empty so objects cannot be created.
+    private ReportBatch() {}
+
+    // The outcome of a batch: the reports made, how many failed, and how long it took.
+    public static class Result {
+        private final ArrayList<String> filenames;
+        private final int failed;
+        private final long nanoseconds;
+
+        private Result(ArrayList<String> filenames, int failed, long nanoseconds) {
+            this.filenames = filenames;
+            this.failed = failed;
+            this.nanoseconds = nanoseconds;
+        }
+
+        public ArrayList<String> getFilenames() {
+            return this.filenames;
+        }
+        public int getGenerated() {
+            return this.filenames.size();
+        }
+        public int getFailed() {
+            return this.failed;
+        }
+        public double getSeconds() {
+            return this.nanoseconds / 1e9;
+        }
+        // How many reports were made each second, over the whole batch.
+        public double getReportsPerSecond() {
+            return this.nanoseconds == 0 ? 0 : this.filenames.size() / this.getSeconds();
+        }
+    }
+
+    // Method to generate every type of report for every child of the given accounts, and wait for them all.
+    // The progress listener (which can be null) is told how many reports are done out of the total after each
+    // one finishes. It is called from the pool's threads, so screens must pass it on to the Swing thread.
+    // The records must not be changed while this runs, so screens should stop the user doing so until it's done.
+    public static Result generate(List<String> owners, BiConsumer<Integer, Integer> progress) {
+        long start = System.nanoTime();
+        // Load every child up front, on this thread. Loading isn't safe to run for several children of an
+        // account at once, but loadAll() already reads their files in parallel, and once loaded, the reports
+        // only read the records.
+        ArrayList<Callable<String>> tasks = new ArrayList<>();
+        AtomicInteger done = new AtomicInteger();
+        for (String owner : owners) {
+            ChildDatabase database = ChildRepository.get(owner);
+            database.loadAll();
+            for (Child child : database.getAllChildren()) {
+                for (String type : TYPES) {
+                    tasks.add(() -> {
+                        try {
+                            // The owner goes in the filename, since children in different accounts can share a name.
+                            return ReportGenerator.generate(child.getName(), type, database, owner);
+                        } finally {
+                            if (progress != null) {
+                                progress.accept(done.incrementAndGet(), tasks.size());
+                            }
+                        }
+                    });
+                }
+            }
+        }
+        ArrayList<String> filenames = new ArrayList<>();
+        int failed = 0;
+        for (Future<String> task : pool.invokeAll(tasks)) {
+            try {
+                String filename = task.get();
+                if (filename == null) {
+                    failed++;
+                } else {
+                    filenames.add(filename);
+                }
+            } catch (InterruptedException | ExecutionException e) {
+                // Count it and carry on, so one bad report doesn't stop the rest.
+                e.printStackTrace();
+                failed++;
+            }
+        }
+        return new Result(filenames, failed, System.nanoTime() - start);
+    }
+}
@@ -0,0 +1,52 @@
+package application.Functionality;
+
+// Modules for keeping the reports in order of use.
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// This class keeps the reports made recently, so making the same report again is almost instant.
+// Drawing the graph and compressing it into the PDF is most of the work of a report, but it only depends
+// on the records, so while they haven't changed, the report made last time can be used again.
+// ReportGenerator keeps everything but the heading (which has the time it was made) in here, as the bytes
+// of a PDF file, under the child, the type of report, and the version of the records (see RecordColumns).
+// Records changing gives them a new version, so an old report is never used by mistake. It just stops
+// being asked for, and is dropped once it is the one used longest ago and the reports take up too much space.
+// It is safe to use from any thread. Like AppStorage, it only contains static methods, so objects must not be created.
+public class ReportCache {
+    // The most space the reports can take up together, in bytes. Most reports are tens of kilobytes.
+    private static final long MAX_BYTES = 16L * 1024 * 1024;
+    // The reports, in order of when they were last used, longest ago first.
+    private static final LinkedHashMap<String, byte[]> reports = new LinkedHashMap<>(16, 0.75f, true);
+    // How many bytes the reports take up together.
+    private static long bytes = 0;
+
+    // Make the constructor private and empty so objects cannot be created.
+    private ReportCache() {}
+
+    // Method to get a report, or null if it isn't kept.
+    public static synchronized byte[] get(String key) {
+        return reports.get(key);
+    }
+
+    // Method to keep a report, dropping the ones used longest ago if they now take up too much space.
+    // The report just kept is never dropped, even if it is bigger than that on its own.
+    public static synchronized void put(String key, byte[] report) {
+        byte[] previous = reports.put(key, report);
+        if (previous != null) {
+            bytes -= previous.length;
+        }
+        bytes += report.length;
+        Iterator<Map.Entry<String, byte[]>> iterator = reports.entrySet().iterator();
+        while (bytes > MAX_BYTES && reports.size() > 1) {
+            bytes -= iterator.next().getValue().length;
+            iterator.remove();
+        }
+    }
+
+    // Method to drop every report, e.g. to free the memory.
+    public static synchronized void clear() {
+        reports.clear();
+        bytes = 0;
+    }
+}
@@ -0,0 +1,79 @@
+package application.Functionality;
+
+// Modules for laying out the pages of a report.
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDPageContentStream;
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
+import org.apache.pdfbox.pdmodel.font.PDType1Font;
+import org.apache.pdfbox.pdmodel.font.Standard14Fonts;
+
+import java.io.IOException;
+import java.time.format.DateTimeFormatter;
+
+// This class holds everything that is set up the same way for every report (see ReportGenerator), so it is only
+// set up once, rather than again for each report: the fonts, the formats of the date and time in the heading,
+// and where everything goes on the page.
+// The formats and positions never change, so they are shared by every report. The fonts aren't safe to use from
+// more than one thread at once (PDFBox remembers the text it has encoded in them, and notes each document it
+// saves them into), so each thread making reports gets its own, and keeps using them for the next report.
+// Looking up a font and encoding text with it for the first time is most of the work of setting up a report,
+// which matters when a whole batch of reports is made at once (see ReportBatch).
+// Objects are only created by get(), one per thread.
+public class ReportContext {
+    // The page size, which is A4. Note that the coordinates go from the bottom left, not the top left.
+    public static final PDRectangle PAGE = PDRectangle.A4;
+    // The left margin, and the margins at the top and bottom of each page, which are 10% of the page.
+    public static final float LEFT = PAGE.getWidth() * 0.1f;
+    public static final float TOP = PAGE.getHeight() * 0.9f;
+    public static final float BOTTOM = PAGE.getHeight() * 0.1f;
+    // The size of the heading and the main text, and the gap between lines of text.
+    public static final float HEADING_SIZE = 16;
+    public static final float TEXT_SIZE = 10;
+    public static final float LEADING = 14.5f;
+    // Where the first line of text goes on the first page, leaving room for the heading above it.
+    public static final float FIRST_LINE = TOP - 30 - LEADING;
+    // How many lines of text fit on the first page, and on each page after it.
+    public static final int FIRST_PAGE_LINES = (int) ((FIRST_LINE - BOTTOM) / LEADING) + 1;
+    public static final int PAGE_LINES = (int) ((TOP - BOTTOM) / LEADING) + 1;
+    // The formats of the date and time in the heading and the filename.
+    public static final DateTimeFormatter DATE = DateTimeFormatter.ofPattern("yyyy-MM-dd");
+    public static final DateTimeFormatter TIME = DateTimeFormatter.ofPattern("HH.mm");
+    // The context of each thread, made the first time it makes a report.
+    private static final ThreadLocal<ReportContext> contexts = ThreadLocal.withInitial(ReportContext::new);
+
+    // The fonts for the heading (Helvetica Bold) and the main text (Helvetica).
+    private final PDType1Font headingfont;
+    private final PDType1Font textfont;
+
+    // Make the constructor private, so the contexts can only be got through get().
+    private ReportContext() {
+        this.headingfont = new PDType1Font(Standard14Fonts.FontName.HELVETICA_BOLD);
+        this.textfont = new PDType1Font(Standard14Fonts.FontName.HELVETICA);
+    }
+
+    // Method to get the context for the current thread, which must not be passed on to any other thread.
+    public static ReportContext get() {
+        return contexts.get();
+    }
+
+    public PDType1Font getHeadingFont() {
+        return this.headingfont;
+    }
+    public PDType1Font getTextFont() {
+        return this.textfont;
+    }
+
+    // Method to add a new page to a document, and start a text section on it at the given height, ready for
+    // lines of the main text. The caller must end the text section and close the content stream.
+    public PDPageContentStream startPage(PDDocument doc, float y) throws IOException {
+        PDPage page = new PDPage(PAGE);
+        doc.addPage(page);
+        PDPageContentStream content = new PDPageContentStream(doc, page);
+        content.setFont(this.textfont, TEXT_SIZE);
+        content.beginText();
+        content.newLineAtOffset(LEFT, y);
+        content.setLeading(LEADING);
+        return content;
+    }
+}
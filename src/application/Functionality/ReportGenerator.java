@@ -2,19 +2,26 @@ package application.Functionality;
 
 import application.*;
 
+import org.apache.pdfbox.Loader;
+import org.apache.pdfbox.io.MemoryUsageSetting;
 import org.apache.pdfbox.pdmodel.*;
-import org.apache.pdfbox.pdmodel.common.*;
-import org.apache.pdfbox.pdmodel.font.*;
 import org.apache.pdfbox.pdmodel.graphics.image.*;
 
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FilenameFilter;
 import java.io.IOException;
 import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
+import java.util.List;
 
 public class ReportGenerator {
+    // How much of a document PDFBox may keep in memory while it is being made. Anything more goes into temporary
+    // files, so a report of years of records doesn't need its hundreds of pages in memory at once.
+    private static final long MAX_MEMORY = 4L * 1024 * 1024;
+    // Reports with more records than this are written straight to their file instead of being kept (see ReportCache).
+    private static final int MAX_CACHED_RECORDS = 2000;
     // Use a private and empty constructor, to ensure objects can't be instantiated.
     private ReportGenerator() {}
     // Generates a report based on the given type.
@@ -22,143 +29,65 @@ public class ReportGenerator {
     // Returns null on any problems.
     // It needs to get the ChildDatabase from the host, so it can find the reports.
     public static String generate(String child, String type, ChildDatabase childDatabase) {
+        return generate(child, type, childDatabase, null);
+    }
+    // The same, but with the owner of the account in front of the filename (unless it is null), for reports made
+    // for several accounts at once (see ReportBatch). Otherwise two children with the same name in different
+    // accounts would get the same filename, and one report would be written over the other.
+    public static String generate(String child, String type, ChildDatabase childDatabase, String owner) {
         // Only support the given types.
         if (!type.equals("Feeding") && !type.equals("Sleep") && !type.equals("Medication") && !type.equals("Diaper Change") && !type.equals("Growth Record")) {
             return null;
         }
         // Get the date and time, which will be displayed in the heading.
         LocalDateTime now = LocalDateTime.now();
-        String date = now.format(DateTimeFormatter.ofPattern("yyyy-MM-dd"));
-        String time = now.format(DateTimeFormatter.ofPattern("HH.mm"));
+        String date = now.format(ReportContext.DATE);
+        String time = now.format(ReportContext.TIME);
         // Set up the folder to store the report, which will be 'Documents/Health Reports'.
         String folder = System.getProperty("user.home") + "/Documents/Health Reports/";
         // Determine what the filename shall be, based on collected details.
-        String filename = folder + child + "_" + type + "_" + date + "_" + time + ".pdf";
+        String filename = folder + (owner == null ? "" : owner + "_") + child + "_" + type + "_" + date + "_" + time + ".pdf";
         // Try to create the parent directories of the file if they don't already exist.
         new File(filename).getParentFile().mkdirs();
         // Set up the document.
         try {
-            PDDocument doc = new PDDocument();
-            // Add the main page to the document, using the A4 page size.
-            PDPage page = new PDPage(PDRectangle.A4);
-            doc.addPage(page);
-            // Use the page size to determine the maximum coordinates we can use.
-            // Note that the coordinates go from the bottom left, not the top left.
-            float xmax = PDRectangle.A4.getWidth();
-            float ymax = PDRectangle.A4.getHeight();
-            // Set up the content stream for the page.
-            PDPageContentStream content = new PDPageContentStream(doc, page);
+            // The fonts and layout are set up once for each thread, and used again for every report it makes.
+            ReportContext context = ReportContext.get();
+            String key = child + "/" + type + "/" + childDatabase.getChild(child).getRecordVersion(recordType(type));
+            // The records are listed oldest first, even if some were logged after the fact.
+            List<?> records = getRecords(childDatabase.getChild(child), type);
+            PDDocument doc;
+            if (records.size() <= MAX_CACHED_RECORDS) {
+                // Everything but the heading only depends on the records, so a report made earlier can be reused
+                // as long as they haven't changed since (see ReportCache). Otherwise, make it from scratch.
+                byte[] body = ReportCache.get(key);
+                if (body == null) {
+                    PDDocument bodydoc = new PDDocument(MemoryUsageSetting.setupMixed(MAX_MEMORY).streamCache);
+                    generateBody(bodydoc, context, child, type, records, childDatabase);
+                    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                    bodydoc.save(bytes);
+                    bodydoc.close();
+                    body = bytes.toByteArray();
+                    ReportCache.put(key, body);
+                }
+                doc = Loader.loadPDF(body);
+            } else {
+                // Too big to keep, so make it straight into the document that gets saved.
+                doc = new PDDocument(MemoryUsageSetting.setupMixed(MAX_MEMORY).streamCache);
+                generateBody(doc, context, child, type, records, childDatabase);
+            }
+            // Set up a content stream for the heading, added on after the rest of the first page.
+            PDPageContentStream content = new PDPageContentStream(doc, doc.getPage(0), PDPageContentStream.AppendMode.APPEND, true);
             // Set the font for the heading (Helvetica Bold 16pt).
-            content.setFont(new PDType1Font(Standard14Fonts.FontName.HELVETICA_BOLD), 16);
+            content.setFont(context.getHeadingFont(), ReportContext.HEADING_SIZE);
             // Start the heading text section.
             content.beginText();
-            // Set the position to be based on 90% of the page; these are sensible margins.
-            // The f after the number is needed because we are using floats, not doubles.
-            content.newLineAtOffset(xmax * 0.1f, ymax * 0.9f);
+            // Set the position to be inside the top and left margins.
+            content.newLineAtOffset(ReportContext.LEFT, ReportContext.TOP);
             // Display the text.
             content.showText(child + "'s " + type + " report, generated on " + date + " at " + time);
             // End the heading text section.
             content.endText();
-            // Set the font for the main text section (Helvetica 10pt).
-            content.setFont(new PDType1Font(Standard14Fonts.FontName.HELVETICA), 10);
-            // Begin the main text section.
-            content.beginText();
-            // Set the starting point for the text based on the heading, but slightly below.
-            content.newLineAtOffset(xmax * 0.1f, (ymax * 0.9f) - 30);
-            // Initial new line, to prevent first 2 lines overlaying each other.
-            content.newLine();
-            content.setLeading(14.5f);
-            // Depending on the record type, loop through each record and write it as a line.
-            int countlines = 0;
-            switch (type) {
-                case "Feeding":
-                    for (FeedingRecord fr : childDatabase.getChild(child).getFeedingRecords()) {
-                        content.showText(fr.toString());
-                        content.newLine();
-                        content.setLeading(14.5f);
-                        countlines++;
-                    }
-                    break;
-                case "Sleep":
-                    for (SleepSession sr : childDatabase.getChild(child).getSleepRecords()) {
-                        content.showText(sr.toString());
-                        content.newLine();
-                        content.setLeading(14.5f);
-                        countlines++;
-                    }
-                    break;
-                case "Medication":
-                    for (MedicationRecord mr : childDatabase.getChild(child).getMedicationRecords()) {
-                        content.showText(mr.toString());
-                        content.newLine();
-                        content.setLeading(14.5f);
-                        countlines++;
-                    }
-                    break;
-                case "Diaper Change":
-                    for (DiaperChangeRecord dr : childDatabase.getChild(child).getDiaperChangeRecords()) {
-                        content.showText(dr.toString());
-                        content.newLine();
-                        content.setLeading(14.5f);
-                        countlines++;
-                    }
-                    break;
-                case "Growth Record":
-                    for (GrowthData gr : childDatabase.getChild(child).getGrowthRecords()) {
-                        content.showText(gr.toString());
-                        content.newLine();
-                        content.setLeading(14.5f);
-                        countlines++;
-                    }
-                    break;
-            }
-            // End this text area.
-            content.endText();
-            // Depending on the type, generate a graph.
-            // Set to null initially, so we can deal with unsupported types, if needed.
-            PDImageXObject graph = null;
-            String graphfile = null;
-            switch (type) {
-                case "Feeding":
-                    graphfile = GraphGenerator.feedingGraph(childDatabase.getChild(child).getFeedingRecords());
-                    break;
-                case "Sleep":
-                    graphfile = GraphGenerator.sleepGraph(childDatabase.getChild(child).getSleepRecords());
-                    break;
-                case "Medication":
-                    graphfile = GraphGenerator.medicationGraph(childDatabase.getChild(child).getMedicationRecords());
-                    break;
-                case "Diaper Change":
-                    graphfile = GraphGenerator.diaperChangeGraph(childDatabase.getChild(child).getDiaperChangeRecords());
-                    break;
-                case "Growth Record":
-                    graphfile = GraphGenerator.growthRecordGraph(childDatabase.getChild(child).getGrowthRecords());
-                    break;
-            }
-            // Only set up the graph if the generation completed successfully.
-            if (graphfile != null) {
-                graph = PDImageXObject.createFromFile(graphfile, doc);
-                // Delete the raw image file after it has been loaded as a PDImageXObject.
-                new File(graphfile).delete();
-            }
-            // Add the graph image to the document, if generation was successful.
-            if (graph != null) {
-                // Draw the image at the center, and below the text from above.
-                // The height is found by accounting for how many record entries there were.
-                content.drawImage(
-                        // Draw the graph itself.
-                        graph,
-                        // Center the image by finding middle X point minus 1/4 of image width.
-                        // This is in order to account for the fact that we are scaling to half.
-                        (xmax * 0.5f) - (graph.getWidth() * 0.25f),
-                        // Display the image at a Y position determined by number of text lines.
-                        // The second number is just an additional offset, to avoid overlaying text.
-                        (ymax * 0.9f) - (countlines * 14.5f) - 350,
-                        // Scale the image to half its size, so it fits on the page.
-                        graph.getWidth() * 0.5f,
-                        graph.getHeight() * 0.5f
-                );
-            }
             // Close the content, save the document, and then close the document.
             content.close();
             doc.save(filename);
@@ -171,6 +100,126 @@ public class ReportGenerator {
         // Return the filename to indicate that it completed successfully.
         return filename;
     }
+    // Generates everything in a report apart from the heading into the given document: the records,
+    // one per line over as many pages as they need, and then the graph on a page of its own.
+    // Each page is finished before the next is started, so its content can go out of memory (see MAX_MEMORY).
+    private static void generateBody(PDDocument doc, ReportContext context, String child, String type, List<?> records, ChildDatabase childDatabase) throws IOException {
+        // Start the first page, leaving room for the heading above the text.
+        PDPageContentStream content = context.startPage(doc, ReportContext.FIRST_LINE);
+        int lines = ReportContext.FIRST_PAGE_LINES;
+        // Loop through each record and write it as a line, moving on to a new page once this one is full.
+        for (Object record : records) {
+            if (lines == 0) {
+                content.endText();
+                content.close();
+                content = context.startPage(doc, ReportContext.TOP);
+                lines = ReportContext.PAGE_LINES;
+            }
+            content.showText(record.toString());
+            content.newLine();
+            lines--;
+        }
+        // End this text area, and the page.
+        content.endText();
+        content.close();
+        // Depending on the type, generate a graph, again from the records in order of time.
+        BufferedImage graphimage = generateGraph(child, type, childDatabase);
+        // Add the graph image to the document on its own page, if generation was successful.
+        if (graphimage != null) {
+            // Hand the image straight to the document, which compresses it losslessly like a PNG.
+            PDImageXObject graph = LosslessFactory.createFromImage(doc, graphimage);
+            PDPage page = new PDPage(ReportContext.PAGE);
+            doc.addPage(page);
+            content = new PDPageContentStream(doc, page);
+            content.drawImage(
+                    // Draw the graph itself.
+                    graph,
+                    // Center the image by finding middle X point minus 1/4 of image width.
+                    // This is in order to account for the fact that we are scaling to half.
+                    (ReportContext.PAGE.getWidth() * 0.5f) - (graph.getWidth() * 0.25f),
+                    // Display the image at the top of the page, inside the margin.
+                    ReportContext.TOP - (graph.getHeight() * 0.5f),
+                    // Scale the image to half its size, so it fits on the page.
+                    graph.getWidth() * 0.5f,
+                    graph.getHeight() * 0.5f
+            );
+            content.close();
+        }
+    }
+    // Helper method to get the records a type of report lists, oldest first.
+    private static List<?> getRecords(Child child, String type) {
+        switch (type) {
+            case "Feeding":
+                return child.getFeedingRecords(null, null);
+            case "Sleep":
+                return child.getSleepRecords(null, null);
+            case "Medication":
+                return child.getMedicationRecords(null, null);
+            case "Diaper Change":
+                return child.getDiaperChangeRecords(null, null);
+            default:
+                return child.getGrowthRecords(null, null);
+        }
+    }
+    // Generates the graph for a type of report, from the records in order of time.
+    // The feeding, medication and diaper change charts only count the records, so they are given the records as they
+    // are stored, which they can count straight from the columns without making a copy (see RecordColumns.from).
+    // They count each type of food or medication rather than totals over time, so rollups (see RecordRollups),
+    // which only keep the totals for each period, are no use to them. Only the sleep chart uses those.
+    // Returns null if there isn't a graph for the type.
+    private static BufferedImage generateGraph(String child, String type, ChildDatabase childDatabase) {
+        // Set to null initially, so we can deal with unsupported types, if needed.
+        BufferedImage graphimage = null;
+        switch (type) {
+            case "Feeding":
+                graphimage = GraphGenerator.feedingGraph(childDatabase.getChild(child).getFeedingRecords());
+                break;
+            case "Sleep":
+                // Over more than a few days, chart the total for each day, week or month from the rollups instead.
+                // The daily rollup gives the first and last day with any sleep, so the records don't need reading for it.
+                List<RecordRollups.Bucket> days = childDatabase.getRollup(child, RecordFormat.SLEEP, RecordRollups.DAY, null, null);
+                String level = null;
+                if (!days.isEmpty()) {
+                    LocalDateTime first = days.get(0).getStart();
+                    LocalDateTime last = days.get(days.size() - 1).getStart().plusDays(1);
+                    level = RecordRollups.level(first, last);
+                }
+                if (level == null) {
+                    // A few days at most, so there are few enough sessions to chart one by one.
+                    graphimage = GraphGenerator.sleepGraph(childDatabase.getChild(child).getSleepRecords(null, null));
+                } else if (level.equals(RecordRollups.DAY)) {
+                    graphimage = GraphGenerator.sleepRollupGraph(days, level);
+                } else {
+                    graphimage = GraphGenerator.sleepRollupGraph(childDatabase.getRollup(child, RecordFormat.SLEEP, level, null, null), level);
+                }
+                break;
+            case "Medication":
+                graphimage = GraphGenerator.medicationGraph(childDatabase.getChild(child).getMedicationRecords());
+                break;
+            case "Diaper Change":
+                graphimage = GraphGenerator.diaperChangeGraph(childDatabase.getChild(child).getDiaperChangeRecords());
+                break;
+            case "Growth Record":
+                graphimage = GraphGenerator.growthRecordGraph(childDatabase.getChild(child).getGrowthRecords(null, null));
+                break;
+        }
+        return graphimage;
+    }
+    // Helper method to get the record type (see RecordFormat) that a type of report is about.
+    private static String recordType(String type) {
+        switch (type) {
+            case "Feeding":
+                return RecordFormat.FEEDING;
+            case "Sleep":
+                return RecordFormat.SLEEP;
+            case "Medication":
+                return RecordFormat.MEDICATION;
+            case "Diaper Change":
+                return RecordFormat.DIAPERCHANGE;
+            default:
+                return RecordFormat.GROWTH;
+        }
+    }
     // Deletes a report from the disk, given its filename.
     public static void delete(String filename) {
         // Set up the file path based on main docs directory, and then delete it.
@@ -45,8 +45,8 @@ public class LoginComponent extends JPanel implements ActionListener {
         // Create the app's data directory if it does not exist.
         new File(AppStorage.getDirectory()).mkdirs();
 
-        // Set up the database of accounts.
-        this.accounts = new AccountDatabase();
+        // Get the shared database of accounts, which is only read from the disk the first time.
+        this.accounts = AccountDatabase.get();
 
         // Set background color and layout
         this.setBackground(BACKGROUND_COLOR);
@@ -2,6 +2,7 @@ package application;
 
 import java.awt.*;
 import java.awt.event.*;
+import java.io.IOException;
 import javax.swing.*;
 import application.Functionality.*;
 
@@ -32,9 +33,8 @@ public class Settings extends JFrame {
 
     private void getUserInfo() {
         try {
-            // Set up an account database (which will read data from the disk), and find the account.
-            // This is needed because Settings is separate to UserProfile.
-            AccountDatabase accountDB = new AccountDatabase();
+            // Get the shared account database (which is only read from the disk the first time), and find the account.
+            AccountDatabase accountDB = AccountDatabase.get();
             Account userAccount = accountDB.getAccount(username);
 
             // Ensure the account object actually exists, then get the information.
@@ -64,7 +64,22 @@ public class Settings extends JFrame {
     }
 
     private void setupFrame() {
-        setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
+        // Closing this screen closes the app, which ends once the changes have been saved below.
+        setDefaultCloseOperation(JFrame.DISPOSE_ON_CLOSE);
+        // Renaming or deleting a child changes records, so make sure they are all written before the app exits,
+        // the same as UserProfile does.
+        addWindowListener(new WindowAdapter() {
+            @Override
+            public void windowClosing(WindowEvent e) {
+                ChildRepository.get(username).sync();
+                // Depending on the durability policy, some of it may still need forcing on to the disk.
+                try {
+                    DurableWriter.commitAll();
+                } catch (IOException ex) {
+                    ex.printStackTrace();
+                }
+            }
+        });
         setTitle("Settings");
 
         // Set the size to 80% of screen size, for the most ideal fit.
@@ -112,9 +127,8 @@ public class Settings extends JFrame {
         mainPanel.add(Box.createVerticalStrut(20));
 
         // Add the list of all children asscociated with this account.
-        // We will initialise a ChildDatabase object, which will read the existing data from the disk.
-        // This is because the Settings page can't share the same db object from UserProfile.
-        ChildDatabase childDB = new ChildDatabase(username);
+        // This is the same database UserProfile uses, so nothing needs reading from the disk again.
+        ChildDatabase childDB = ChildRepository.get(username);
         for (Child child : childDB.getAllChildren()) {
             addChildField(child.getName());
         }
@@ -227,7 +241,7 @@ public class Settings extends JFrame {
             }
 
             try {
-                AccountDatabase accountDB = new AccountDatabase();
+                AccountDatabase accountDB = AccountDatabase.get();
 
                 switch (fieldName) {
                     case "Name":
@@ -285,7 +299,7 @@ public class Settings extends JFrame {
 
         // Verify current password
         String currentPass = new String(currentPassField.getPassword());
-        AccountDatabase accountDB = new AccountDatabase();
+        AccountDatabase accountDB = AccountDatabase.get();
         if (!accountDB.verifyAccount(username, currentPass)) {
             JOptionPane.showMessageDialog(this,
                     "Current password is incorrect",
@@ -393,8 +407,10 @@ public class Settings extends JFrame {
 
         if (result == JOptionPane.YES_OPTION) {
             try {
-                AccountDatabase accountDB = new AccountDatabase();
+                AccountDatabase accountDB = AccountDatabase.get();
                 accountDB.deleteAccount(username);
+                // Nothing will use the account's children again.
+                ChildRepository.invalidate(username);
 
                 JOptionPane.showMessageDialog(this,
                         "Account deleted successfully",
@@ -467,7 +483,15 @@ public class Settings extends JFrame {
 
         if (newName != null && !newName.trim().isEmpty()) {
             try {
-                ChildDatabase childDB = new ChildDatabase(username);
+                ChildDatabase childDB = ChildRepository.get(username);
+                // Check the new name isn't too long to save
+                if (newName.trim().length() > ChildDatabase.MAX_NAME) {
+                    JOptionPane.showMessageDialog(this,
+                            "The child's name can be at most " + ChildDatabase.MAX_NAME + " characters.",
+                            "Error",
+                            JOptionPane.ERROR_MESSAGE);
+                    return;
+                }
                 // Check if new name already exists
                 if (childDB.getChild(newName) != null) {
                     JOptionPane.showMessageDialog(this,
@@ -505,7 +529,7 @@ public class Settings extends JFrame {
 
         if (confirm == JOptionPane.YES_OPTION) {
             try {
-                ChildDatabase childDB = new ChildDatabase(username);
+                ChildDatabase childDB = ChildRepository.get(username);
                 childDB.deleteChild(childName);
 
                 // Refresh all components on the entire settings page, to display new values.
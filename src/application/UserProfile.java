@@ -1,10 +1,17 @@
 package application;
 
 import application.Functionality.ChildDatabase;
+import application.Functionality.ChildRepository;
+import application.Functionality.DurableWriter;
+import application.Functionality.ReportBatch;
 
 import javax.swing.*;
 import javax.swing.border.EmptyBorder;
 import java.awt.*;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
+import java.io.IOException;
+import java.util.List;
 
 public class UserProfile extends JFrame {
     private String username;
@@ -25,11 +32,25 @@ public class UserProfile extends JFrame {
 
     public UserProfile(String username) {
         this.username = username;
-        this.children = new ChildDatabase(username);
+        // Every screen shares the same database, so coming back here doesn't read everything again.
+        this.children = ChildRepository.get(username);
 
         // Set up the main frame
         setTitle("User Profile");
         setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
+        // Record changes are saved in the background, so make sure they are all written before the app exits.
+        addWindowListener(new WindowAdapter() {
+            @Override
+            public void windowClosing(WindowEvent e) {
+                children.sync();
+                // Depending on the durability policy, some of it may still need forcing on to the disk.
+                try {
+                    DurableWriter.commitAll();
+                } catch (IOException ex) {
+                    ex.printStackTrace();
+                }
+            }
+        });
         setExtendedState(JFrame.MAXIMIZED_BOTH);
         setLayout(new BorderLayout(10, 10)); // main layout with gaps
 
@@ -84,6 +105,7 @@ public class UserProfile extends JFrame {
         settingsButton.setPreferredSize(new Dimension(60,60));
         
         JButton logoutButton = new JButton("Logout");
+        JButton reportsButton = new JButton("Generate All Reports");
 
         // Add basic actions for Settings and Logout
         settingsButton.addActionListener(e -> {
@@ -93,12 +115,15 @@ public class UserProfile extends JFrame {
             TLauncher.switchTo(new Settings(this.username), settingsButton);
         });
         logoutButton.addActionListener(e -> {
-            // Ensure all data is synced due to redundancy
-            this.children.sync();
+            // Ensure all data is synced, and let the shared database go, since nothing needs it until the next login
+            ChildRepository.invalidate(this.username);
             // Switch back to the login screen and discard this one
             new Login();
             this.dispose();
         });
+        // Generate every report for every child at once
+        reportsButton.addActionListener(e -> generateAllReports());
+        topButtonsPanel.add(reportsButton);
         topButtonsPanel.add(settingsButton);
         topButtonsPanel.add(logoutButton);
         topPanel.add(topButtonsPanel, BorderLayout.EAST);
@@ -185,11 +210,68 @@ public class UserProfile extends JFrame {
         return userProfilePanel;
     }
 
+    // Generates every type of report for every child, showing the progress in a window until they are done.
+    private void generateAllReports() {
+        if (this.children.isEmpty()) {
+            JOptionPane.showMessageDialog(this, "There are no children to generate reports for.", "Error", JOptionPane.ERROR_MESSAGE);
+            return;
+        }
+        // The window blocks the rest of the screen, so the records can't change while the reports are made.
+        JDialog dialog = new JDialog(this, "Generating reports", true);
+        dialog.setDefaultCloseOperation(JDialog.DO_NOTHING_ON_CLOSE);
+        JProgressBar progressBar = new JProgressBar();
+        progressBar.setStringPainted(true);
+        progressBar.setString("Loading records\u2026");
+        JPanel progressPanel = new JPanel(new BorderLayout());
+        progressPanel.setBorder(new EmptyBorder(20, 20, 20, 20));
+        progressPanel.add(progressBar, BorderLayout.CENTER);
+        dialog.add(progressPanel);
+        dialog.setSize(400, 120);
+        dialog.setLocationRelativeTo(this);
+        // Make the reports on another thread, so the window can show the progress meanwhile.
+        Thread thread = new Thread(() -> {
+            ReportBatch.Result result;
+            try {
+                result = ReportBatch.generate(List.of(this.username), (done, total) -> SwingUtilities.invokeLater(() -> {
+                    progressBar.setMaximum(total);
+                    progressBar.setValue(done);
+                    progressBar.setString(done + " of " + total + " reports");
+                }));
+            } catch (RuntimeException ex) {
+                // E.g. the records couldn't be read. Close the window rather than leaving it stuck.
+                ex.printStackTrace();
+                SwingUtilities.invokeLater(() -> {
+                    dialog.dispose();
+                    JOptionPane.showMessageDialog(this, "The reports could not be generated.", "Error", JOptionPane.ERROR_MESSAGE);
+                });
+                return;
+            }
+            SwingUtilities.invokeLater(() -> {
+                dialog.dispose();
+                String message = String.format("Generated %d reports in %.1f seconds (%.1f reports/sec).", result.getGenerated(), result.getSeconds(), result.getReportsPerSecond());
+                if (result.getFailed() > 0) {
+                    JOptionPane.showMessageDialog(this, message + " " + result.getFailed() + " failed.", "Error", JOptionPane.ERROR_MESSAGE);
+                } else {
+                    JOptionPane.showMessageDialog(this, message, "Information", JOptionPane.INFORMATION_MESSAGE);
+                }
+            });
+        }, "UserProfile-reports");
+        thread.setDaemon(true);
+        thread.start();
+        // This waits here (while still handling the screen) until the window is closed above.
+        dialog.setVisible(true);
+    }
+
     // Creates a prompt for the user to add a new child by typing the username.
     private void promptAndAddChild() {
         String childName = JOptionPane.showInputDialog(this, "Enter child's name:");
         // trim() is used to strip off any spaces at the start or end of the string.
         if (childName != null && !childName.trim().isEmpty()) {
+            // Names that are too long can't be saved, so stop here rather than let the database refuse it.
+            if (childName.trim().length() > ChildDatabase.MAX_NAME) {
+                JOptionPane.showMessageDialog(this, "The child's name can be at most " + ChildDatabase.MAX_NAME + " characters.", "Error", JOptionPane.ERROR_MESSAGE);
+                return;
+            }
             // Add the new child to the database (sync is done automatically).
             this.children.addChild(childName.trim());
             // Refresh the grid so the newly added child is listed.
@@ -0,0 +1,61 @@
+package benchmarks;
+
+import application.Functionality.AccountDatabase;
+import application.Functionality.AppStorage;
+
+import java.io.File;
+import java.io.PrintWriter;
+import java.util.Random;
+
+// Benchmark of loading the accounts and looking one up by username (see AccountDatabase), as the number of
+// accounts grows. Loading should grow in line with the number of accounts, and a lookup should take the same
+// time however many there are. It writes the accounts and extra fields files of each size into a temporary
+// home directory, so the real accounts are never touched.
+// Like AppStorage, it only contains static methods, so objects must not be created.
+public class AccountLookupBenchmark {
+    // The numbers of accounts to measure with.
+    private static final int[] SIZES = {1000, 5000, 20000, 50000};
+    // How many times to time loading, and how many usernames to look up.
+    private static final int RUNS = 3;
+    private static final int LOOKUPS = 20000;
+
+    // Make the constructor private and empty so objects cannot be created.
+    private AccountLookupBenchmark() {}
+
+    public static void main(String[] args) throws Exception {
+        // AppStorage keeps everything under the home directory, so point it at an empty one.
+        System.setProperty("user.home", Bench.temporaryDirectory().getPath());
+        File directory = new File(AppStorage.getDirectory());
+        directory.mkdirs();
+        System.out.printf("Loading best of %d, lookups averaged over %d random usernames:%n", RUNS, LOOKUPS);
+        for (int size : SIZES) {
+            try (PrintWriter accounts = new PrintWriter(new File(directory, "accounts.dat"));
+                 PrintWriter extras = new PrintWriter(new File(directory, "extrafields.dat"))) {
+                for (int i = 0; i < size; i++) {
+                    accounts.println("user" + i + ",User " + i + ",hash" + i);
+                    extras.println("user" + i + ",user" + i + "@example.org,0123" + i);
+                }
+            }
+            AccountDatabase[] loaded = new AccountDatabase[1];
+            long load = Bench.best(RUNS, () -> loaded[0] = new AccountDatabase());
+            // The usernames are made before timing, so only the lookups themselves are counted.
+            Random random = new Random(1);
+            String[] usernames = new String[LOOKUPS];
+            for (int i = 0; i < LOOKUPS; i++) {
+                usernames[i] = "user" + random.nextInt(size);
+            }
+            long start = System.nanoTime();
+            int found = 0;
+            for (String username : usernames) {
+                if (loaded[0].getAccount(username) != null) {
+                    found++;
+                }
+            }
+            long lookups = System.nanoTime() - start;
+            if (found != LOOKUPS) {
+                throw new IllegalStateException("Only found " + found + " of " + LOOKUPS + " accounts.");
+            }
+            System.out.printf("  %6d accounts: load %8.1f ms, getAccount %6.0f ns%n", size, Bench.millis(load), (double) lookups / LOOKUPS);
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+// This package holds the benchmarks behind the performance changes, so the numbers can be measured again.
+// Each benchmark is a class with its own main method, run from the compiled classes (with the libraries), e.g.:
+//   java -cp out:lib/* benchmarks.ParseTimeBenchmark
+// They aren't part of the app, and nothing in the app uses them.
+//
+// This class holds the helpers that the benchmarks share.
+// Like AppStorage, it only contains static methods, so objects must not be created.
+public class Bench {
+    // Results are added on to this, so the work being timed can't be optimised away for being unused.
+    public static volatile long sink;
+
+    // A piece of work to time, which may throw anything, since a benchmark just stops if something goes wrong.
+    public interface Task {
+        void run() throws Exception;
+    }
+
+    // Make the constructor private and empty so objects cannot be created.
+    private Bench() {}
+
+    // Method to run a task a number of times, and return the quickest run in nanoseconds.
+    // The quickest is used since the slower runs are the ones held up by warming up or garbage collection.
+    public static long best(int runs, Task task) throws Exception {
+        long best = Long.MAX_VALUE;
+        for (int i = 0; i < runs; i++) {
+            long start = System.nanoTime();
+            task.run();
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        return best;
+    }
+
+    // Method to make a new empty directory for a benchmark's files, which is deleted again when it finishes.
+    public static File temporaryDirectory() throws IOException {
+        File directory = Files.createTempDirectory("babytracker-benchmark").toFile();
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> deleteAll(directory)));
+        return directory;
+    }
+
+    // Methods to convert nanoseconds for printing.
+    public static double millis(long nanos) {
+        return nanos / 1e6;
+    }
+    public static double micros(long nanos) {
+        return nanos / 1e3;
+    }
+
+    // Helper method to delete a directory and everything in it.
+    private static void deleteAll(File file) {
+        File[] list = file.listFiles();
+        if (list != null) {
+            for (File inner : list) {
+                deleteAll(inner);
+            }
+        }
+        file.delete();
+    }
+}
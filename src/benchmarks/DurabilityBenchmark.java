@@ -0,0 +1,82 @@
+package benchmarks;
+
+import application.Functionality.DurableWriter;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+// Benchmark of how long writes take under each durability policy (see DurableWriter).
+// For each policy it times appending a journal line and replacing a small file one at a time, giving the
+// median and the 99th percentile, and then several threads appending at once, which is where grouping the
+// forcing of files together pays off. The files go in a temporary directory, which must be on the disk
+// being measured, e.g. pass -Djava.io.tmpdir=<directory> to choose it.
+// Like AppStorage, it only contains static methods, so objects must not be created.
+public class DurabilityBenchmark {
+    // How many appends and replaces to time one at a time.
+    private static final int APPENDS = 300;
+    private static final int REPLACES = 100;
+    // How many threads append at once, and how many lines each appends.
+    private static final int THREADS = 8;
+    private static final int THREAD_APPENDS = 100;
+    // A typical journal line, and a file about the size of a month of records.
+    private static final String LINE = "1,+,fr,3:Sam,2024-01-01T00:00,Formula,120.0\n";
+    private static final String CONTENTS = "x".repeat(4000);
+
+    // Make the constructor private and empty so objects cannot be created.
+    private DurabilityBenchmark() {}
+
+    public static void main(String[] args) throws Exception {
+        File directory = Bench.temporaryDirectory();
+        DurableWriter.Policy original = DurableWriter.getPolicy();
+        System.out.println("Write latency per durability policy, in " + directory.getParent() + ":");
+        for (DurableWriter.Policy policy : DurableWriter.Policy.values()) {
+            DurableWriter.setPolicy(policy);
+            File file = new File(directory, "append-" + policy);
+            long[] appends = new long[APPENDS];
+            for (int i = 0; i < APPENDS; i++) {
+                long start = System.nanoTime();
+                DurableWriter.append(file, LINE);
+                appends[i] = System.nanoTime() - start;
+            }
+            File replaced = new File(directory, "replace-" + policy);
+            long[] replaces = new long[REPLACES];
+            for (int i = 0; i < REPLACES; i++) {
+                long start = System.nanoTime();
+                DurableWriter.replace(replaced, CONTENTS);
+                replaces[i] = System.nanoTime() - start;
+            }
+            // Each thread appends to its own file, like several children's journals being written at once.
+            ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+            List<Future<?>> futures = new ArrayList<>();
+            long start = System.nanoTime();
+            for (int t = 0; t < THREADS; t++) {
+                File threadfile = new File(directory, "thread" + t + "-" + policy);
+                futures.add(pool.submit(() -> {
+                    for (int i = 0; i < THREAD_APPENDS; i++) {
+                        DurableWriter.append(threadfile, LINE);
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+            long concurrent = System.nanoTime() - start;
+            pool.shutdown();
+            // Anything still waiting to be forced must not be counted against the next policy.
+            DurableWriter.commitAll();
+            Arrays.sort(appends);
+            Arrays.sort(replaces);
+            System.out.printf("  %-12s append p50 %7.1f us, p99 %8.1f us | replace p50 %7.1f us, p99 %8.1f us | %d threads: %6.1f us per append%n",
+                    policy, Bench.micros(appends[APPENDS / 2]), Bench.micros(appends[APPENDS * 99 / 100]),
+                    Bench.micros(replaces[REPLACES / 2]), Bench.micros(replaces[REPLACES * 99 / 100]),
+                    THREADS, Bench.micros(concurrent) / (THREADS * THREAD_APPENDS));
+        }
+        DurableWriter.setPolicy(original);
+    }
+}
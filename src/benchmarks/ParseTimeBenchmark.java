@@ -0,0 +1,51 @@
+package benchmarks;
+
+import application.Functionality.RecordFormat;
+
+import java.time.LocalDateTime;
+
+// Benchmark of RecordFormat.parseTime against LocalDateTime.parse, which the record loaders used before.
+// It makes a million timestamps the way LocalDateTime.toString() writes them, with and without seconds and
+// fractions of a second, checks both parsers agree on every one, and then times each parsing all of them.
+// Like AppStorage, it only contains static methods, so objects must not be created.
+public class ParseTimeBenchmark {
+    // How many timestamps to parse, and how many times to time it.
+    private static final int COUNT = 1_000_000;
+    private static final int RUNS = 5;
+
+    // Make the constructor private and empty so objects cannot be created.
+    private ParseTimeBenchmark() {}
+
+    public static void main(String[] args) throws Exception {
+        // Every 37 seconds, so some land on the minute (which toString() writes without seconds),
+        // and every third one has half a second on the end.
+        String[] lines = new String[COUNT];
+        LocalDateTime base = LocalDateTime.of(2024, 1, 1, 0, 0);
+        for (int i = 0; i < COUNT; i++) {
+            lines[i] = base.plusSeconds(i * 37L).plusNanos(i % 3 == 0 ? 500_000_000L : 0).toString();
+        }
+        // Make sure the fast parser gives exactly the same times, or the timings don't mean anything.
+        for (String line : lines) {
+            if (!RecordFormat.parseTime(line).equals(LocalDateTime.parse(line))) {
+                throw new IllegalStateException("parseTime disagrees with LocalDateTime.parse on " + line);
+            }
+        }
+        long parse = Bench.best(RUNS, () -> {
+            long total = 0;
+            for (String line : lines) {
+                total += LocalDateTime.parse(line).getMinute();
+            }
+            Bench.sink += total;
+        });
+        long parsetime = Bench.best(RUNS, () -> {
+            long total = 0;
+            for (String line : lines) {
+                total += RecordFormat.parseTime(line).getMinute();
+            }
+            Bench.sink += total;
+        });
+        System.out.printf("%d timestamps, best of %d:%n", COUNT, RUNS);
+        System.out.printf("  LocalDateTime.parse     %8.1f ms%n", Bench.millis(parse));
+        System.out.printf("  RecordFormat.parseTime  %8.1f ms  (%.1fx faster)%n", Bench.millis(parsetime), (double) parse / parsetime);
+    }
+}
@@ -0,0 +1,101 @@
+package benchmarks;
+
+import application.FeedingRecord;
+import application.GrowthData;
+import application.SleepSession;
+import application.Functionality.RecordFile;
+import application.Functionality.RecordFormat;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+// Benchmark of the compressed record files (see RecordCodec) against the CSV files they replaced.
+// It makes two years of feedings, sleeps and growth measurements like a real child's, writes each both ways,
+// checks both read back the same records, and then compares the size of the files and how long they take to read.
+// Like AppStorage, it only contains static methods, so objects must not be created.
+public class RecordCodecBenchmark {
+    // How many times to time reading each file.
+    private static final int RUNS = 300;
+
+    // Ways of writing, reading and printing a list of one record type, so each type can be measured the same way.
+    private interface Writer<T> {
+        void write(File file, List<T> records) throws IOException;
+    }
+    private interface Reader<T> {
+        List<T> read(File file);
+    }
+    private interface Liner<T> {
+        String toLine(T record);
+    }
+
+    // Make the constructor private and empty so objects cannot be created.
+    private RecordCodecBenchmark() {}
+
+    public static void main(String[] args) throws Exception {
+        // The same seed every time, so every run measures the same records.
+        Random random = new Random(1);
+        List<FeedingRecord> feedings = new ArrayList<>();
+        List<SleepSession> sleeps = new ArrayList<>();
+        List<GrowthData> growths = new ArrayList<>();
+        String[] foods = {"Formula", "Breast milk", "Puree"};
+        int food = 0;
+        // A feeding every two and a half to three and a half hours, a nap after about a third of them,
+        // and the food changing now and then.
+        LocalDateTime time = LocalDateTime.of(2023, 1, 1, 6, 0);
+        while (time.getYear() < 2025) {
+            if (random.nextInt(20) == 0) {
+                food = random.nextInt(foods.length);
+            }
+            feedings.add(new FeedingRecord(time, foods[food], 60 + 10 * random.nextInt(6)));
+            if (random.nextInt(3) == 0) {
+                sleeps.add(new SleepSession(time, time.plusMinutes(5), time.plusMinutes(5 + 30 * (1 + random.nextInt(6)))));
+            }
+            time = time.plusMinutes(150 + 5 * random.nextInt(13));
+        }
+        // Weighed and measured once a week.
+        for (LocalDateTime weighed = LocalDateTime.of(2023, 1, 2, 10, 0); weighed.getYear() < 2025; weighed = weighed.plusWeeks(1)) {
+            growths.add(new GrowthData(weighed, 3.2 + growths.size() * 0.05, 50 + growths.size() * 0.2));
+        }
+        File directory = Bench.temporaryDirectory();
+        System.out.printf("Two years of records, reading best of %d:%n", RUNS);
+        measure(directory, "feedings", feedings, RecordFile::writeFeedings, RecordFile::readFeedings, RecordFormat::toLine);
+        measure(directory, "sleeps", sleeps, RecordFile::writeSleeps, RecordFile::readSleeps, RecordFormat::toLine);
+        measure(directory, "growths", growths, RecordFile::writeGrowths, RecordFile::readGrowths, RecordFormat::toLine);
+    }
+
+    // Helper method to write one type of records in both formats, and print their sizes and reading times.
+    private static <T> void measure(File directory, String name, List<T> records, Writer<T> writer, Reader<T> reader, Liner<T> liner) throws Exception {
+        File compressed = new File(directory, name + ".dat");
+        File csv = new File(directory, name + ".csv");
+        writer.write(compressed, records);
+        // The CSV files had one record per line, as RecordFormat writes them (and RecordFile can still read).
+        StringBuilder lines = new StringBuilder();
+        for (T record : records) {
+            lines.append(liner.toLine(record)).append('\n');
+        }
+        Files.writeString(csv.toPath(), lines);
+        check(name, records, reader.read(compressed), liner);
+        check(name, records, reader.read(csv), liner);
+        long compressedtime = Bench.best(RUNS, () -> Bench.sink += reader.read(compressed).size());
+        long csvtime = Bench.best(RUNS, () -> Bench.sink += reader.read(csv).size());
+        System.out.printf("  %-8s %5d records | CSV %7d bytes, compressed %6d bytes | reading CSV %7.1f us, compressed %7.1f us%n",
+                name, records.size(), csv.length(), compressed.length(), Bench.micros(csvtime), Bench.micros(compressedtime));
+    }
+
+    // Helper method to make sure a file read back exactly the records written to it.
+    private static <T> void check(String name, List<T> written, List<T> read, Liner<T> liner) {
+        if (written.size() != read.size()) {
+            throw new IllegalStateException("Wrote " + written.size() + " " + name + " but read back " + read.size() + ".");
+        }
+        for (int i = 0; i < written.size(); i++) {
+            if (!liner.toLine(written.get(i)).equals(liner.toLine(read.get(i)))) {
+                throw new IllegalStateException("Read back a different record in " + name + " at " + i + ".");
+            }
+        }
+    }
+}
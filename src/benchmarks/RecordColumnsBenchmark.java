@@ -0,0 +1,110 @@
+package benchmarks;
+
+import application.Child;
+import application.DiaperChangeRecord;
+import application.FeedingRecord;
+import application.SleepSession;
+import application.Functionality.ChildDatabase;
+import application.Functionality.DurableWriter;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+// Benchmark of keeping a child's records as columns (see RecordColumns) rather than lists of record objects.
+// With 100,000 each of feedings, sleeps and diaper changes, it measures how much memory the records keep hold of
+// either way, how long going through every feeding takes either way, and how long it takes to load them all
+// from the disk into a child. The files go in a temporary home directory, so the real data is never touched.
+// Like AppStorage, it only contains static methods, so objects must not be created.
+public class RecordColumnsBenchmark {
+    // How many of each record type the child has, and how many times to time loading and going through them.
+    // Going through them is quick, so it is timed many more times, to give the JIT time to compile it.
+    private static final int COUNT = 100_000;
+    private static final int RUNS = 5;
+    private static final int LOOP_RUNS = 50;
+    private static final String[] FOODS = {"Formula", "Breast milk", "Puree"};
+    private static final String[] NAPPIES = {"Wet nappy", "Soiled nappy", "Mixed nappy"};
+
+    // Make the constructor private and empty so objects cannot be created.
+    private RecordColumnsBenchmark() {}
+
+    public static void main(String[] args) throws Exception {
+        // AppStorage keeps everything under the home directory, so point it at an empty one.
+        System.setProperty("user.home", Bench.temporaryDirectory().getPath());
+        // Only loading is being measured, so don't wait for every record added below to be forced on to the disk.
+        DurableWriter.setPolicy(DurableWriter.Policy.NONE);
+
+        // The records as objects, the way Child kept them before.
+        long before = usedMemory();
+        List<FeedingRecord> feedings = new ArrayList<>();
+        List<SleepSession> sleeps = new ArrayList<>();
+        List<DiaperChangeRecord> nappies = new ArrayList<>();
+        LocalDateTime start = LocalDateTime.of(2020, 1, 1, 0, 0);
+        for (int i = 0; i < COUNT; i++) {
+            LocalDateTime time = start.plusMinutes(i * 20L);
+            // Strings are read from the files one record at a time, so each record had its own copy.
+            feedings.add(new FeedingRecord(time, new String(FOODS[i % FOODS.length]), 60 + 10 * (i % 6)));
+            sleeps.add(new SleepSession(time, time.plusMinutes(5), time.plusMinutes(95)));
+            nappies.add(new DiaperChangeRecord(time, new String(NAPPIES[i % NAPPIES.length])));
+        }
+        long objects = usedMemory() - before;
+
+        // The same records as columns. The objects are still around, so what is left over is just the columns.
+        before = usedMemory();
+        Child child = new Child("Sam");
+        addRecords(child, feedings, sleeps, nappies);
+        long columns = usedMemory() - before;
+        System.out.printf("%d each of feedings, sleeps and diaper changes:%n", COUNT);
+        System.out.printf("  memory kept: objects %6.1f MB, columns %6.1f MB%n", objects / 1e6, columns / 1e6);
+
+        List<FeedingRecord> view = child.getFeedingRecords();
+        long objectloop = Bench.best(LOOP_RUNS, () -> {
+            double total = 0;
+            for (FeedingRecord record : feedings) {
+                total += record.getAmount();
+            }
+            Bench.sink += (long) total;
+        });
+        long columnloop = Bench.best(LOOP_RUNS, () -> {
+            double total = 0;
+            for (FeedingRecord record : view) {
+                total += record.getAmount();
+            }
+            Bench.sink += (long) total;
+        });
+        System.out.printf("  going through every feeding: objects %6.2f ms, columns %6.2f ms%n", Bench.millis(objectloop), Bench.millis(columnloop));
+
+        // Write everything into the record files, then time reading the database and loading the child.
+        ChildDatabase database = new ChildDatabase("benchmark");
+        database.addChild("Sam");
+        addRecords(database.getChild("Sam"), feedings, sleeps, nappies);
+        database.sync();
+        // Opening the database again waits for the compaction that the sync started to finish.
+        new ChildDatabase("benchmark");
+        long load = Bench.best(RUNS, () -> {
+            ChildDatabase loaded = new ChildDatabase("benchmark");
+            loaded.getChild("Sam").load();
+            Bench.sink += loaded.getChild("Sam").getFeedingRecords().size();
+        });
+        System.out.printf("  loading from the disk: %6.1f ms%n", Bench.millis(load));
+    }
+
+    // Helper method to add the records to a child, in the order they happened.
+    private static void addRecords(Child child, List<FeedingRecord> feedings, List<SleepSession> sleeps, List<DiaperChangeRecord> nappies) {
+        for (int i = 0; i < COUNT; i++) {
+            child.addFeedingRecord(feedings.get(i));
+            child.addSleepRecord(sleeps.get(i));
+            child.addDiaperChangeRecord(nappies.get(i));
+        }
+    }
+
+    // Helper method to get how much memory is in use, after getting rid of as much garbage as possible.
+    private static long usedMemory() throws InterruptedException {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            Thread.sleep(50);
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
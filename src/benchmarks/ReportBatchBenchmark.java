@@ -0,0 +1,96 @@
+package benchmarks;
+
+import application.Child;
+import application.DiaperChangeRecord;
+import application.FeedingRecord;
+import application.GrowthData;
+import application.MedicationRecord;
+import application.SleepSession;
+import application.Functionality.ChildDatabase;
+import application.Functionality.ChildRepository;
+import application.Functionality.DurableWriter;
+import application.Functionality.ReportBatch;
+import application.Functionality.ReportCache;
+import application.Functionality.ReportGenerator;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Random;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+// Benchmark of making every report for every child at once (see ReportBatch), against making them one at a time
+// the way the child's screen does. It sets up two accounts of ten children, each with a couple of weeks of every
+// record type, in a temporary home directory, and prints the reports made per second each way. It also times the
+// batch again with nothing changed, when every report body comes from ReportCache.
+// Like AppStorage, it only contains static methods, so objects must not be created.
+public class ReportBatchBenchmark {
+    // The accounts to make reports for, how many children each has, and how many of each record type each child has.
+    private static final List<String> OWNERS = List.of("daycare1", "daycare2");
+    private static final int CHILDREN = 10;
+    private static final int RECORDS = 40;
+    // Reports made in the same minute get the same filename, so PDFBox warns about every one made again.
+    // The logger is kept here because the logging classes only keep a weak reference to it.
+    private static final Logger PDFBOX = Logger.getLogger("org.apache.pdfbox");
+
+    // Make the constructor private and empty so objects cannot be created.
+    private ReportBatchBenchmark() {}
+
+    public static void main(String[] args) throws Exception {
+        PDFBOX.setLevel(Level.SEVERE);
+        // AppStorage keeps everything (including the reports) under the home directory, so point it at an empty one.
+        System.setProperty("user.home", Bench.temporaryDirectory().getPath());
+        // Only the reports are being measured, so don't wait for every record added below to be forced on to the disk.
+        DurableWriter.setPolicy(DurableWriter.Policy.NONE);
+        Random random = new Random(1);
+        LocalDateTime start = LocalDateTime.of(2024, 1, 1, 8, 0);
+        for (String owner : OWNERS) {
+            ChildDatabase database = ChildRepository.get(owner);
+            for (int k = 0; k < CHILDREN; k++) {
+                String name = "Child " + k;
+                database.addChild(name);
+                Child child = database.getChild(name);
+                for (int i = 0; i < RECORDS; i++) {
+                    LocalDateTime time = start.plusHours(i * 7L);
+                    child.addFeedingRecord(new FeedingRecord(time, random.nextBoolean() ? "Formula" : "Breast milk", 50 + random.nextInt(100)));
+                    child.addSleepRecord(new SleepSession(time, time, time.plusMinutes(60 + random.nextInt(300))));
+                    child.addMedicationRecord(new MedicationRecord(time, "Paracetamol", 2.5));
+                    child.addDiaperChangeRecord(new DiaperChangeRecord(time, "Wet nappy"));
+                    child.addGrowthData(new GrowthData(time, 3 + i * 0.05, 50 + i * 0.2));
+                }
+            }
+            database.sync();
+        }
+        // Start from the disk, the same as a batch run just after logging in.
+        ChildRepository.invalidateAll();
+
+        // The first batch loads the fonts and classes, which only ever happens once, so it isn't counted.
+        ReportBatch.generate(OWNERS, null);
+        ReportCache.clear();
+        ReportBatch.Result batch = ReportBatch.generate(OWNERS, null);
+        if (batch.getFailed() > 0) {
+            throw new IllegalStateException(batch.getFailed() + " reports failed.");
+        }
+
+        ReportCache.clear();
+        long started = System.nanoTime();
+        int count = 0;
+        for (String owner : OWNERS) {
+            ChildDatabase database = ChildRepository.get(owner);
+            for (Child child : database.getAllChildren()) {
+                for (String type : ReportBatch.TYPES) {
+                    if (ReportGenerator.generate(child.getName(), type, database, owner) != null) {
+                        count++;
+                    }
+                }
+            }
+        }
+        double seconds = (System.nanoTime() - started) / 1e9;
+
+        ReportBatch.Result cached = ReportBatch.generate(OWNERS, null);
+        System.out.printf("%d reports on %d cores:%n", batch.getGenerated(), Runtime.getRuntime().availableProcessors());
+        System.out.printf("  one at a time:               %6.2f s, %7.1f reports/sec%n", seconds, count / seconds);
+        System.out.printf("  batch:                       %6.2f s, %7.1f reports/sec%n", batch.getSeconds(), batch.getReportsPerSecond());
+        System.out.printf("  batch again, nothing changed: %5.2f s, %7.1f reports/sec%n", cached.getSeconds(), cached.getReportsPerSecond());
+    }
+}
@@ -0,0 +1,79 @@
+package benchmarks;
+
+import application.Functionality.ReportContext;
+
+import org.apache.pdfbox.pdmodel.font.PDType1Font;
+import org.apache.pdfbox.pdmodel.font.Standard14Fonts;
+
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+// Benchmark of setting up a report (see ReportContext): looking up the fonts and date formats again for each
+// report, as ReportGenerator used to, against getting them from the thread's context. Each report's setup is
+// the heading and one line of text, encoded with the fonts, which is the first thing a report does with them.
+// The setups run on a pool of one thread per core, the same as a batch of reports (see ReportBatch).
+// Like AppStorage, it only contains static methods, so objects must not be created.
+public class ReportContextBenchmark {
+    // How many reports to set up each time, and how many times to time them.
+    private static final int REPORTS = 2000;
+    private static final int RUNS = 5;
+    // A typical line of the main text of a report.
+    private static final String LINE = "Feeding: Formula at 2024-01-13T10:03, Amount: 109.0 ml";
+    // Without a font installed for Helvetica, PDFBox warns about using another one for every font made, and
+    // writing out the warnings would be timed too. The logger is kept here because the logging classes only keep
+    // a weak reference to it.
+    private static final Logger PDFBOX = Logger.getLogger("org.apache.pdfbox");
+
+    // Make the constructor private and empty so objects cannot be created.
+    private ReportContextBenchmark() {}
+
+    public static void main(String[] args) throws Exception {
+        PDFBOX.setLevel(Level.SEVERE);
+        ExecutorService pool = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+        if (!setupEachTime().equals(setupFromContext())) {
+            throw new IllegalStateException("The fonts from the context encoded the text differently.");
+        }
+        long eachtime = Bench.best(RUNS, () -> setUp(pool, ReportContextBenchmark::setupEachTime));
+        long context = Bench.best(RUNS, () -> setUp(pool, ReportContextBenchmark::setupFromContext));
+        pool.shutdown();
+        System.out.printf("Setting up %d reports on %d threads, best of %d:%n", REPORTS, Runtime.getRuntime().availableProcessors(), RUNS);
+        System.out.printf("  fonts and formats for each report: %8.1f us per report%n", Bench.micros(eachtime) / REPORTS);
+        System.out.printf("  fonts and formats from the context: %7.1f us per report%n", Bench.micros(context) / REPORTS);
+    }
+
+    // Helper method to set up every report on the pool, and wait for them all.
+    private static void setUp(ExecutorService pool, Callable<Integer> setup) throws Exception {
+        List<Callable<Integer>> tasks = new ArrayList<>();
+        for (int i = 0; i < REPORTS; i++) {
+            tasks.add(setup);
+        }
+        for (Future<Integer> future : pool.invokeAll(tasks)) {
+            Bench.sink += future.get();
+        }
+    }
+
+    // Helper method to set up a report the old way, with new fonts and formats.
+    private static Integer setupEachTime() throws Exception {
+        LocalDateTime now = LocalDateTime.now();
+        String date = now.format(DateTimeFormatter.ofPattern("yyyy-MM-dd")) + "_" + now.format(DateTimeFormatter.ofPattern("HH.mm"));
+        PDType1Font headingfont = new PDType1Font(Standard14Fonts.FontName.HELVETICA_BOLD);
+        PDType1Font textfont = new PDType1Font(Standard14Fonts.FontName.HELVETICA);
+        return headingfont.encode("Sam's Feeding report, generated on " + date).length + textfont.encode(LINE).length;
+    }
+
+    // Helper method to set up a report with the fonts and formats from the thread's context.
+    private static Integer setupFromContext() throws Exception {
+        LocalDateTime now = LocalDateTime.now();
+        String date = now.format(ReportContext.DATE) + "_" + now.format(ReportContext.TIME);
+        ReportContext context = ReportContext.get();
+        return context.getHeadingFont().encode("Sam's Feeding report, generated on " + date).length + context.getTextFont().encode(LINE).length;
+    }
+}